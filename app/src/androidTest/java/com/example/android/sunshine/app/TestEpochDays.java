@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/*
+    Checks the epoch days against the android.text.format.Time arithmetic they replaced, for
+    every day from 2000 to 2030 at several hours, in zones with daylight saving time at
+    midnight, half hour offsets and offsets past a day apart, then times both normalizing the
+    dates.  The numbers are only logged: they depend too much on the device to assert on.
+ */
+public class TestEpochDays extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestEpochDays.class.getSimpleName();
+
+    private static final String[] ZONES = {
+            "UTC",
+            "America/Los_Angeles",
+            // Daylight saving time starts at midnight, which is skipped
+            "America/Sao_Paulo",
+            "America/St_Johns",
+            "Europe/London",
+            "Asia/Kolkata",
+            // Half an hour of daylight saving time
+            "Australia/Lord_Howe",
+            "Pacific/Kiritimati",
+            "Pacific/Pago_Pago"
+    };
+    private static final int[] HOURS = {0, 1, 6, 12, 18, 23};
+    // January 1st 2000 and 2031
+    private static final int FIRST_DAY = 10957;
+    private static final int END_DAY = 22280;
+    private static final int ROUNDS = 20;
+
+    public void testDaysMatchTime() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            Time time = new Time(id);
+            for (int day = FIRST_DAY; day < END_DAY; day++) {
+                long start = EpochDays.toMillis(day, zone);
+                assertEquals("Error: start of " + day + " in " + id, day,
+                        EpochDays.fromMillis(start, zone));
+                assertEquals("Error: day before " + day + " in " + id, day - 1,
+                        EpochDays.fromMillis(start - 1, zone));
+
+                int julianDay = EpochDays.toJulianDay(day);
+                long midnight = time.setJulianDay(julianDay);
+                if (time.hour == 0 && time.minute == 0) {
+                    assertEquals("Error: midnight of " + day + " in " + id, midnight, start);
+                }
+
+                for (int hour : HOURS) {
+                    long millis = start + hour * 60 * 60 * 1000L;
+                    time.set(millis);
+                    assertEquals("Error: day of " + millis + " in " + id,
+                            Time.getJulianDay(millis, time.gmtoff),
+                            EpochDays.toJulianDay(EpochDays.fromMillis(millis, zone)));
+                }
+
+                time.setJulianDay(julianDay);
+                assertEquals("Error: day of month of " + day, time.monthDay,
+                        EpochDays.getDayOfMonth(day));
+                assertEquals("Error: month of " + day, time.month + 1, EpochDays.getMonth(day));
+                assertEquals("Error: year of " + day, time.year, EpochDays.getYear(day));
+                // Time counts from Sunday
+                assertEquals("Error: day of week of " + day, (time.weekDay + 6) % 7,
+                        EpochDays.getDayOfWeek(day));
+            }
+        }
+    }
+
+    public void testWeekAndMonthStarts() {
+        // Wednesday June 24th 2015
+        int day = 16610;
+        assertEquals(2, EpochDays.getDayOfWeek(day));
+        assertEquals(day - 2, EpochDays.getWeekStart(day));
+        assertEquals(day - 23, EpochDays.getMonthStart(day));
+        // Before the epoch too
+        assertEquals(3, EpochDays.getDayOfWeek(0));
+        assertEquals(2, EpochDays.getDayOfWeek(-1));
+        assertEquals(31, EpochDays.getDayOfMonth(-1));
+        assertEquals(12, EpochDays.getMonth(-1));
+        assertEquals(1969, EpochDays.getYear(-1));
+        // February 29th 2000
+        assertEquals(29, EpochDays.getDayOfMonth(11016));
+        assertEquals(2, EpochDays.getMonth(11016));
+    }
+
+    public void testNormalizeDateBenchmark() {
+        long[] dates = new long[END_DAY - FIRST_DAY];
+        for (int i = 0; i < dates.length; i++) {
+            // Spread over the hours of the days
+            dates[i] = (FIRST_DAY + i) * EpochDays.DAY_IN_MILLIS
+                    + i * 7919L % EpochDays.DAY_IN_MILLIS;
+        }
+        // Warms both up first
+        timeTime(dates);
+        timeEpochDays(dates);
+        long time = timeTime(dates);
+        long epochDays = timeEpochDays(dates);
+        Log.i(LOG_TAG, "dates=" + dates.length + " median per round with Time=" + time / 1000
+                + "us with EpochDays=" + epochDays / 1000 + "us");
+    }
+
+    /*
+        @return the median time to normalize the dates the way the contract did, with a Time
+        per date, in nanoseconds
+     */
+    private long timeTime(long[] dates) {
+        long[] elapsed = new long[ROUNDS];
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (long date : dates) {
+                Time time = new Time();
+                time.set(date);
+                sum += time.setJulianDay(Time.getJulianDay(date, time.gmtoff));
+            }
+            elapsed[round] = System.nanoTime() - start;
+        }
+        // Keeps the dates from being optimized away
+        assertTrue(sum != 0);
+        Arrays.sort(elapsed);
+        return elapsed[ROUNDS / 2];
+    }
+
+    private long timeEpochDays(long[] dates) {
+        long[] elapsed = new long[ROUNDS];
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            TimeZone zone = TimeZone.getDefault();
+            for (long date : dates) {
+                sum += EpochDays.startOfDay(date, zone);
+            }
+            elapsed[round] = System.nanoTime() - start;
+        }
+        assertTrue(sum != 0);
+        Arrays.sort(elapsed);
+        return elapsed[ROUNDS / 2];
+    }
+}
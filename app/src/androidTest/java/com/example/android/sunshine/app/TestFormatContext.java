@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestFormatContext extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mUnits = mPrefs.getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+        setUnits(R.string.pref_units_metric);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mUnitsKey, mUnits).commit();
+        super.tearDown();
+    }
+
+    public void testSnapshotIsShared() {
+        assertSame(FormatContext.get(mContext), FormatContext.get(mContext));
+    }
+
+    public void testTemperaturesMatchTheFormat() {
+        FormatContext format = FormatContext.get(mContext);
+        // As formatted before the degrees were kept, "-0°" included
+        for (double temperature : new double[]{-40, -12.5, -0.5, -0.4, -0.2, -0.0, 0, 0.4, 0.5,
+                21.4, 21.5, 35}) {
+            assertEquals("Error: " + temperature + " was formatted differently",
+                    String.format(mContext.getString(R.string.format_temperature), temperature),
+                    format.formatTemperature(temperature));
+        }
+        assertEquals(String.format(mContext.getString(R.string.format_temperature), -0.0),
+                format.formatTemperature(-0.4));
+        // The same text, not just an equal one
+        assertSame(format.formatTemperature(21), format.formatTemperature(21.2));
+        // Out of the kept degrees, still formatted
+        assertEquals(String.format(mContext.getString(R.string.format_temperature), 1000.0),
+                format.formatTemperature(1000));
+    }
+
+    public void testUnitsChangeTakesANewSnapshot() {
+        assertTrue(FormatContext.get(mContext).isMetric());
+        setUnits(R.string.pref_units_imperial);
+        FormatContext format = FormatContext.get(mContext);
+        assertFalse(format.isMetric());
+        assertEquals(String.format(mContext.getString(R.string.format_temperature), 212.0),
+                format.formatTemperature(100));
+    }
+
+    public void testDayNames() {
+        FormatContext format = FormatContext.get(mContext);
+        long now = System.currentTimeMillis();
+        assertEquals(mContext.getString(R.string.today), format.getDayName(now));
+        assertEquals(mContext.getString(R.string.tomorrow),
+                format.getDayName(now + DateUtils.DAY_IN_MILLIS));
+        assertTrue(format.getFriendlyDayString(now, true)
+                .startsWith(mContext.getString(R.string.today)));
+    }
+
+    /*
+        The preferences tell their listeners on the main thread, after the commit returns, so
+        the new snapshot is waited for.
+     */
+    private void setUnits(int unitsId) {
+        final boolean metric = unitsId == R.string.pref_units_metric;
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(unitsId)).commit();
+        // Makes sure the snapshot listens to the units
+        FormatContext.get(mContext);
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return FormatContext.get(mContext).isMetric() == metric;
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestSettings extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mLocation;
+    private int mLocationStatus;
+    private long mLastNotification;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        Settings settings = Settings.get(mContext);
+        mLocation = settings.getLocationSetting();
+        mLocationStatus = settings.getLocationStatus();
+        mLastNotification = settings.getLastNotification();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mLocationKey, mLocation).commit();
+        Settings.setLocationStatus(mContext, mLocationStatus);
+        Settings.setLastNotification(mContext, mLastNotification);
+        Settings.persist(mContext);
+        super.tearDown();
+    }
+
+    public void testSnapshotIsShared() {
+        assertSame(Settings.get(mContext), Settings.get(mContext));
+    }
+
+    public void testWritesAreReadBackAtOnce() {
+        Settings.setLocationStatus(mContext, SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID,
+                Settings.get(mContext).getLocationStatus());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID,
+                mPrefs.getInt(mContext.getString(R.string.pref_location_status_key), -1));
+
+        Settings.setLastNotification(mContext, 42);
+        assertEquals(42, Settings.get(mContext).getLastNotification());
+        assertTrue(Settings.persist(mContext));
+        assertEquals(42, mPrefs.getLong(mContext.getString(R.string.pref_last_notification), 0));
+    }
+
+    /*
+        The preferences tell their listeners on the main thread, after the commit returns, so
+        the new snapshot is waited for.
+     */
+    public void testPreferenceChangeTakesANewSnapshot() {
+        final String location = "Test Location";
+        mPrefs.edit().putString(mLocationKey, location).commit();
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return location.equals(Settings.get(mContext).getLocationSetting());
+            }
+        }.run();
+        assertEquals(location, Utility.getPreferredLocation(mContext));
+    }
+}
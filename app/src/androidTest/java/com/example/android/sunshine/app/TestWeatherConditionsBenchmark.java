@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+    Checks the condition tables against the range chains they replaced, for every id around
+    the OpenWeatherMap ones, then times both over all the ids, the way a forecast list binds
+    them.  The numbers are only logged: they depend too much on the device to assert on.
+ */
+public class TestWeatherConditionsBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditionsBenchmark.class.getSimpleName();
+
+    private static final int FIRST_CHECKED_ID = 0;
+    private static final int LAST_CHECKED_ID = 1000;
+    private static final int ROUNDS = 50;
+
+    public void testTablesMatchTheRangeChains() {
+        for (int weatherId = FIRST_CHECKED_ID; weatherId <= LAST_CHECKED_ID; weatherId++) {
+            assertEquals("Error: icon of " + weatherId, getIconFromChain(weatherId),
+                    Utility.getIconResourceForWeatherCondition(weatherId));
+            assertEquals("Error: art of " + weatherId, getArtFromChain(weatherId),
+                    Utility.getArtResourceForWeatherCondition(weatherId));
+            assertEquals("Error: art url of " + weatherId,
+                    getArtUrlFromChain(weatherId),
+                    Utility.getArtUrlForWeatherCondition(mContext, weatherId));
+        }
+        assertEquals(mContext.getString(R.string.condition_761),
+                Utility.getStringForWeatherCondition(mContext, 761));
+        assertEquals(mContext.getString(R.string.condition_unknown, 999),
+                Utility.getStringForWeatherCondition(mContext, 999));
+    }
+
+    /*
+        The preferences tell their listeners on the main thread, after the commit returns, so
+        the new urls are waited for.
+     */
+    public void testArtUrlsFollowTheArtPack() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_art_pack_key);
+        String artPack = prefs.getString(key, mContext.getString(R.string.pref_art_pack_sunshine));
+        // Reads the art pack, which starts listening to its changes
+        Utility.getArtUrlForWeatherCondition(mContext, 741);
+        try {
+            prefs.edit().putString(key, "http://example.com/%s.png").commit();
+            waitForArtUrl("http://example.com/fog.png");
+            assertFalse(Utility.usingLocalGraphics(mContext));
+        } finally {
+            prefs.edit().putString(key, artPack).commit();
+        }
+        waitForArtUrl(String.format(Locale.US, artPack, "fog"));
+    }
+
+    private void waitForArtUrl(final String url) {
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return url.equals(Utility.getArtUrlForWeatherCondition(mContext, 741));
+            }
+        }.run();
+    }
+
+    public void testConditionLookupBenchmark() {
+        // Warms both up first
+        timeChains();
+        timeTables();
+        long chains = timeChains();
+        long tables = timeTables();
+        Log.i(LOG_TAG, "ids=" + (WeatherConditions.LAST_ID - WeatherConditions.FIRST_ID + 1)
+                + " median per round with range chains=" + chains / 1000 + "us"
+                + " with tables=" + tables / 1000 + "us");
+    }
+
+    /*
+        @return the median time to look up the icon, the art, the art url and the description
+        of every condition id with the chains, in nanoseconds
+     */
+    private long timeChains() {
+        long[] elapsed = new long[ROUNDS];
+        int sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int id = WeatherConditions.FIRST_ID; id <= WeatherConditions.LAST_ID; id++) {
+                sum += getIconFromChain(id) + getArtFromChain(id);
+                String url = getArtUrlFromChain(id);
+                sum += url == null ? 0 : url.length();
+                sum += Utility.getStringForWeatherCondition(mContext, id).length();
+            }
+            elapsed[round] = System.nanoTime() - start;
+        }
+        // Keeps the lookups from being optimized away
+        assertTrue(sum != 0);
+        Arrays.sort(elapsed);
+        return elapsed[ROUNDS / 2];
+    }
+
+    private long timeTables() {
+        long[] elapsed = new long[ROUNDS];
+        int sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int id = WeatherConditions.FIRST_ID; id <= WeatherConditions.LAST_ID; id++) {
+                sum += Utility.getIconResourceForWeatherCondition(id)
+                        + Utility.getArtResourceForWeatherCondition(id);
+                String url = Utility.getArtUrlForWeatherCondition(mContext, id);
+                sum += url == null ? 0 : url.length();
+                sum += Utility.getStringForWeatherCondition(mContext, id).length();
+            }
+            elapsed[round] = System.nanoTime() - start;
+        }
+        assertTrue(sum != 0);
+        Arrays.sort(elapsed);
+        return elapsed[ROUNDS / 2];
+    }
+
+    /*
+        The range chains the tables replaced, as they were.
+     */
+    private static int getIconFromChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int getArtFromChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private String getArtUrlFromChain(int weatherId) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String formatArtUrl = prefs.getString(mContext.getString(R.string.pref_art_pack_key),
+                mContext.getString(R.string.pref_art_pack_sunshine));
+
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestArchive extends AndroidTestCase {
+
+    private static final int DAYS = TestProvider.BULK_INSERT_RECORDS_TO_INSERT;
+    // Fixed point keeps two decimals
+    private static final double DELTA = 0.005;
+
+    private long mLocationRowId;
+    private ContentValues[] mDays;
+    private long mFirstDate;
+    private long mLastDate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+        mDays = TestProvider.createBulkInsertWeatherValues(mLocationRowId);
+        // which normalizes their dates
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mDays);
+        mFirstDate = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        mLastDate = WeatherContract.normalizeDate(
+                TestUtilities.TEST_DATE + (DAYS - 1) * DateUtils.DAY_IN_MILLIS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testPastDaysAreArchived() {
+        assertEquals(DAYS, archiveUpTo(mLastDate));
+
+        Cursor weather = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                null, null, null);
+        assertEquals("Error: the archived days are still in the forecast", 0, weather.getCount());
+        weather.close();
+
+        Cursor cursor = mContext.getContentResolver().query(
+                ArchiveEntry.buildArchiveLocationWithRange(TestUtilities.TEST_LOCATION,
+                        mFirstDate, mLastDate), null, null, null, null);
+        assertEquals(DAYS, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(mDays[i].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                    getLong(cursor, ArchiveEntry.COLUMN_DATE));
+            assertEquals(mDays[i].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                    cursor.getInt(cursor.getColumnIndex(ArchiveEntry.COLUMN_WEATHER_ID)));
+            for (String column : new String[]{ArchiveEntry.COLUMN_MIN_TEMP,
+                    ArchiveEntry.COLUMN_MAX_TEMP, ArchiveEntry.COLUMN_HUMIDITY,
+                    ArchiveEntry.COLUMN_PRESSURE, ArchiveEntry.COLUMN_WIND_SPEED,
+                    ArchiveEntry.COLUMN_DEGREES}) {
+                assertEquals("Error: " + column + " of day " + i + " was archived differently",
+                        mDays[i].getAsDouble(column), getDouble(cursor, column), DELTA);
+            }
+        }
+        cursor.close();
+
+        // The range is inclusive and only holds the days within it
+        cursor = mContext.getContentResolver().query(
+                ArchiveEntry.buildArchiveLocationWithRange(TestUtilities.TEST_LOCATION,
+                        mFirstDate + DateUtils.DAY_IN_MILLIS,
+                        mFirstDate + 2 * DateUtils.DAY_IN_MILLIS),
+                null, null, null, null);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Archives the days in two syncs, the aggregates must come out as if they had been
+        computed from all the days at once.
+     */
+    public void testAggregatesAreKeptIncrementally() {
+        archiveUpTo(mFirstDate + (DAYS / 2) * DateUtils.DAY_IN_MILLIS);
+        archiveUpTo(mLastDate);
+
+        checkAggregates(ArchiveEntry.buildWeeksWithRange(TestUtilities.TEST_LOCATION,
+                mFirstDate, mLastDate), true);
+        checkAggregates(ArchiveEntry.buildMonthsWithRange(TestUtilities.TEST_LOCATION,
+                mFirstDate, mLastDate), false);
+    }
+
+    public void testDayIsArchivedOnce() {
+        archiveUpTo(mLastDate);
+        // The server sends the past days again
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(mLocationRowId));
+        assertEquals(DAYS, archiveUpTo(mLastDate));
+
+        assertEquals(DAYS, countArchivedDays());
+        checkAggregates(ArchiveEntry.buildMonthsWithRange(TestUtilities.TEST_LOCATION,
+                mFirstDate, mLastDate), false);
+    }
+
+    public void testOldDaysAreDroppedButNotTheirMonth() {
+        long oldDate = WeatherContract.normalizeDate(
+                mFirstDate - (ArchiveEntry.RETENTION_DAYS + 40) * DateUtils.DAY_IN_MILLIS);
+        ContentValues oldDay = new ContentValues(mDays[0]);
+        oldDay.put(WeatherEntry.COLUMN_DATE, oldDate);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, oldDay);
+        archiveUpTo(oldDate);
+        assertEquals(1, countArchivedDays());
+
+        archiveUpTo(mLastDate);
+        assertEquals("Error: the day past its retention wasn't dropped", DAYS,
+                countArchivedDays());
+
+        Cursor cursor = mContext.getContentResolver().query(
+                ArchiveEntry.buildMonthsWithRange(TestUtilities.TEST_LOCATION, oldDate, oldDate),
+                null, null, null, null);
+        assertTrue("Error: the month of the dropped day went with it", cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_DAY_COUNT)));
+        cursor.close();
+    }
+
+    /*
+        Compares the aggregates of the uri with those computed from the test days.
+     */
+    private void checkAggregates(Uri uri, boolean weeks) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int days = 0;
+        while (cursor.moveToNext()) {
+            long periodStart = getLong(cursor, AggregateEntry.COLUMN_PERIOD_START);
+            List<ContentValues> periodDays = new ArrayList<ContentValues>();
+            for (ContentValues day : mDays) {
+                long date = day.getAsLong(WeatherEntry.COLUMN_DATE);
+                if ((weeks ? WeatherContract.getWeekStart(date)
+                        : WeatherContract.getMonthStart(date)) == periodStart) {
+                    periodDays.add(day);
+                }
+            }
+            assertEquals(periodDays.size(),
+                    cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_DAY_COUNT)));
+            days += periodDays.size();
+
+            double minTemp = Double.MAX_VALUE;
+            double maxTemp = -Double.MAX_VALUE;
+            double tempSum = 0;
+            double maxHumidity = -Double.MAX_VALUE;
+            double windSum = 0;
+            for (ContentValues day : periodDays) {
+                double dayMin = day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+                double dayMax = day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+                minTemp = Math.min(minTemp, dayMin);
+                maxTemp = Math.max(maxTemp, dayMax);
+                tempSum += (dayMin + dayMax) / 2;
+                maxHumidity = Math.max(maxHumidity, day.getAsDouble(WeatherEntry.COLUMN_HUMIDITY));
+                windSum += day.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            }
+            assertEquals(minTemp, getDouble(cursor, AggregateEntry.COLUMN_MIN_TEMP), DELTA);
+            assertEquals(maxTemp, getDouble(cursor, AggregateEntry.COLUMN_MAX_TEMP), DELTA);
+            assertEquals(tempSum / periodDays.size(),
+                    getDouble(cursor, AggregateEntry.COLUMN_MEAN_TEMP), DELTA);
+            assertEquals(maxHumidity, getDouble(cursor, AggregateEntry.COLUMN_MAX_HUMIDITY), DELTA);
+            assertEquals(windSum / periodDays.size(),
+                    getDouble(cursor, AggregateEntry.COLUMN_MEAN_WIND), DELTA);
+        }
+        cursor.close();
+        assertEquals("Error: the periods don't hold every archived day", DAYS, days);
+    }
+
+    private int archiveUpTo(long date) {
+        return mContext.getContentResolver().delete(WeatherEntry.CONTENT_ARCHIVING_URI,
+                WeatherEntry.COLUMN_DATE + " <= ?", new String[]{Long.toString(date)});
+    }
+
+    private int countArchivedDays() {
+        Cursor cursor = mContext.getContentResolver().query(ArchiveEntry.CONTENT_URI, null,
+                null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        return cursor.getLong(cursor.getColumnIndex(column));
+    }
+
+    private static double getDouble(Cursor cursor, String column) {
+        return cursor.getDouble(cursor.getColumnIndex(column));
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(ArchiveEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(AggregateEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
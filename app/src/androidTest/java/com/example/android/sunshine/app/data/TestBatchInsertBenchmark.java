@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares the rows per second written through bulkInsert with those written as a
+    WeatherBatch, for a forecast, a long history and a bulk import.  The numbers are only
+    logged: they depend too much on the device to assert on.
+ */
+public class TestBatchInsertBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBatchInsertBenchmark.class.getSimpleName();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testBatchInsertBenchmark() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationId = ContentUris.parseId(locationUri);
+
+        for (int rows : new int[]{14, 1000, 100000}) {
+            ContentValues[] values = createWeatherValues(locationId, rows);
+            long start = System.nanoTime();
+            assertEquals(rows, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                    values));
+            long bulkInsertNanos = System.nanoTime() - start;
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+            WeatherBatch batch = createWeatherBatch(locationId, rows);
+            start = System.nanoTime();
+            assertEquals(rows, batch.insert(mContext.getContentResolver()));
+            long batchNanos = System.nanoTime() - start;
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+            Log.i(LOG_TAG, "rows=" + rows
+                    + " bulkInsert=" + rowsPerSecond(rows, bulkInsertNanos) + " rows/s"
+                    + " batch=" + rowsPerSecond(rows, batchNanos) + " rows/s");
+        }
+    }
+
+    private static long rowsPerSecond(int rows, long nanos) {
+        return rows * 1000000000L / Math.max(1, nanos);
+    }
+
+    private static ContentValues[] createWeatherValues(long locationId, int rows) {
+        ContentValues[] values = new ContentValues[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, date(i));
+        }
+        return values;
+    }
+
+    private static WeatherBatch createWeatherBatch(long locationId, int rows) {
+        ContentValues template = TestUtilities.createWeatherValues(locationId);
+        WeatherBatch batch = new WeatherBatch(rows);
+        for (int i = 0; i < rows; i++) {
+            batch.add(locationId,
+                    date(i),
+                    template.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    template.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    template.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    template.getAsDouble(WeatherEntry.COLUMN_DEGREES),
+                    template.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    template.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    template.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    template.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        }
+        return batch;
+    }
+
+    private static long date(int day) {
+        return TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS;
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
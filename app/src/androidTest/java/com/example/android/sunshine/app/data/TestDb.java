@@ -55,6 +55,8 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ArchiveEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.AggregateEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -234,4 +236,104 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        The sync metric table only ever keeps its most recent MAX_ROWS rows.
+     */
+    public void testSyncMetricTableIsRingBuffer() {
+        SQLiteDatabase db = new WeatherDbHelper(this.mContext).getWritableDatabase();
+        int total = WeatherContract.SyncMetricEntry.MAX_ROWS + 50;
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < total; i++) {
+                ContentValues values = new ContentValues();
+                values.put(WeatherContract.SyncMetricEntry.COLUMN_SYNC_TIME, i);
+                values.put(WeatherContract.SyncMetricEntry.COLUMN_PHASE, "phase");
+                values.put(WeatherContract.SyncMetricEntry.COLUMN_DURATION, i);
+                assertTrue(db.insert(WeatherContract.SyncMetricEntry.TABLE_NAME, null, values) != -1);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Cursor c = db.rawQuery("SELECT COUNT(*), MIN(" + WeatherContract.SyncMetricEntry.COLUMN_SYNC_TIME
+                + ") FROM " + WeatherContract.SyncMetricEntry.TABLE_NAME, null);
+        assertTrue(c.moveToFirst());
+        assertEquals("Error: The sync metric table outgrew its ring",
+                WeatherContract.SyncMetricEntry.MAX_ROWS, c.getInt(0));
+        assertEquals("Error: The sync metric table didn't drop its oldest rows",
+                total - WeatherContract.SyncMetricEntry.MAX_ROWS, c.getLong(1));
+        c.close();
+        db.close();
+    }
+
+    /*
+        Going up from version 3 keeps the forecasts and adds the location-first index and the
+        archive.
+     */
+    public void testUpgradeKeepsForecasts() {
+        long locationRowId = insertLocation();
+        WeatherDbHelper dbHelper = new WeatherDbHelper(this.mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                TestUtilities.createWeatherValues(locationRowId)) != -1);
+        // Take the database back to how version 3 left it
+        db.execSQL("DROP INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX);
+        db.execSQL("DROP TABLE " + WeatherContract.ArchiveEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE " + WeatherContract.AggregateEntry.TABLE_NAME);
+        db.setVersion(3);
+        dbHelper.close();
+
+        db = new WeatherDbHelper(this.mContext).getWritableDatabase();
+        Cursor c = db.query(WeatherContract.WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+        assertEquals("Error: The upgrade lost the stored forecast", 1, c.getCount());
+        c.close();
+
+        c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name=?",
+                new String[]{WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX});
+        assertTrue("Error: The upgrade didn't create the location-first index", c.moveToFirst());
+        c.close();
+
+        c = db.query(WeatherContract.ArchiveEntry.TABLE_NAME, null, null, null, null, null, null);
+        assertEquals("Error: The upgrade didn't create an empty archive", 0, c.getCount());
+        c.close();
+        db.close();
+    }
+
+    /*
+        The forecast list query reads the location-first index alone, never the weather table.
+     */
+    public void testForecastListQueryIsCovered() {
+        SQLiteDatabase db = new WeatherDbHelper(this.mContext).getWritableDatabase();
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN SELECT " +
+                WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID + ", " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT + ", " +
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG +
+                " FROM " + WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                WeatherContract.LocationEntry.TABLE_NAME + " ON " +
+                WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                " = " + WeatherContract.LocationEntry.TABLE_NAME + "." + WeatherContract.LocationEntry._ID +
+                " WHERE " + WeatherContract.LocationEntry.TABLE_NAME + "." +
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ORDER BY " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                new String[]{TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)});
+        StringBuilder plan = new StringBuilder();
+        while (c.moveToNext()) {
+            // the last column describes the step
+            plan.append(c.getString(c.getColumnCount() - 1)).append('\n');
+        }
+        c.close();
+        db.close();
+        assertTrue("Error: The forecast list query doesn't use the covering index:\n" + plan,
+                plan.toString().contains("COVERING INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX));
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Reads the forecast of one location through the provider while a large sync write for
+    another location runs, and measures how long the reads take.
+ */
+public class TestDbContention extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbContention.class.getSimpleName();
+
+    private static final int WRITE_ROWS = 20000;
+    private static final int MAX_READS = 10000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testDatabaseUsesWriteAheadLog() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Cursor c = db.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(c.moveToFirst());
+        assertEquals("wal", c.getString(0).toLowerCase());
+        c.close();
+        dbHelper.close();
+    }
+
+    /*
+        With the write-ahead log readers carry on while the write runs, rather than all
+        waiting for its transaction to end.  The latencies are logged.
+     */
+    public void testReadersDuringSyncWrite() throws Exception {
+        long readLocationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(readLocationId));
+        final ContentValues[] writeValues = createWriteValues(insertWriteLocation());
+
+        final long[] writeElapsed = new long[1];
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, writeValues);
+                writeElapsed[0] = System.nanoTime() - start;
+            }
+        };
+
+        long[] readElapsed = new long[MAX_READS];
+        int reads = 0;
+        writer.start();
+        while (writer.isAlive() && reads < MAX_READS) {
+            // It's the database we want to read from, not the forecast cache
+            TestUtilities.clearForecastCache(mContext);
+            long start = System.nanoTime();
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithStartDate(
+                            TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                    null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertNotNull(cursor);
+            cursor.getCount();
+            cursor.close();
+            readElapsed[reads++] = System.nanoTime() - start;
+        }
+        writer.join();
+
+        Arrays.sort(readElapsed, 0, reads);
+        Log.i(LOG_TAG, "write rows=" + WRITE_ROWS + " in " + writeElapsed[0] / 1000000 + "ms"
+                + ", reads=" + reads
+                + " p50=" + readElapsed[(reads - 1) / 2] / 1000 + "us"
+                + " p95=" + readElapsed[(int) Math.ceil(reads * 0.95) - 1] / 1000 + "us"
+                + " max=" + readElapsed[reads - 1] / 1000 + "us");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            assertTrue("Error: readers waited for the whole write", reads > 1);
+        }
+    }
+
+    private long insertWriteLocation() {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, "contention");
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Contention");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 0);
+        location.put(LocationEntry.COLUMN_COORD_LONG, 0);
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+        db.close();
+        assertTrue(locationId != -1);
+        return locationId;
+    }
+
+    private static ContentValues[] createWriteValues(long locationId) {
+        ContentValues[] values = new ContentValues[WRITE_ROWS];
+        for (int i = 0; i < WRITE_ROWS; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationId);
+            values[i].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * DateUtils.DAY_IN_MILLIS);
+        }
+        return values;
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+public class TestForecastCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastCache.class.getSimpleName();
+
+    private static final int QUERIES = 50;
+
+    // The columns of the weather table alone, which can be read without the cache
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    private Uri mForecastUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        mForecastUri = WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testRepeatedQueryIsServedFromCache() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        Bundle before = getCacheStats();
+        readAll(queryForecast(WEATHER_COLUMNS));
+        String[][] cached = readAll(queryForecast(WEATHER_COLUMNS));
+        Bundle after = getCacheStats();
+
+        assertEquals(1, after.getInt(WeatherEntry.CACHE_MISSES)
+                - before.getInt(WeatherEntry.CACHE_MISSES));
+        assertEquals(1, after.getInt(WeatherEntry.CACHE_HITS)
+                - before.getInt(WeatherEntry.CACHE_HITS));
+
+        // The weather table itself isn't cached, its cursor reads straight from the database
+        String[][] stored = readAll(mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                WEATHER_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC"));
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT, stored.length);
+        assertTrue("Error: the cached rows read differently from the stored ones",
+                Arrays.deepEquals(stored, cached));
+    }
+
+    public void testWriteInvalidatesCache() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        queryForecast(null).close();
+
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Comets");
+        assertTrue(mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                null, null) > 0);
+
+        Bundle before = getCacheStats();
+        Cursor cursor = queryForecast(null);
+        assertEquals("Error: the write didn't invalidate the cache", 1,
+                getCacheStats().getInt(WeatherEntry.CACHE_MISSES)
+                        - before.getInt(WeatherEntry.CACHE_MISSES));
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Comets",
+                cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)));
+        cursor.close();
+    }
+
+    /*
+        Times the forecast list query from the database and from the cache.  The numbers are only
+        logged: they depend too much on the device to assert on.
+     */
+    public void testColdVsWarmBenchmark() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        long[] cold = new long[QUERIES];
+        long[] warm = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            TestUtilities.clearForecastCache(mContext);
+            cold[i] = timeQuery();
+            warm[i] = timeQuery();
+        }
+        Arrays.sort(cold);
+        Arrays.sort(warm);
+        Log.i(LOG_TAG, "median cold=" + cold[QUERIES / 2] / 1000 + "us"
+                + " warm=" + warm[QUERIES / 2] / 1000 + "us");
+    }
+
+    private long timeQuery() {
+        long start = System.nanoTime();
+        Cursor cursor = queryForecast(null);
+        cursor.getCount();
+        long elapsed = System.nanoTime() - start;
+        cursor.close();
+        return elapsed;
+    }
+
+    private Cursor queryForecast(String[] projection) {
+        Cursor cursor = mContext.getContentResolver().query(mForecastUri, projection, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    private Bundle getCacheStats() {
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_GET_CACHE_STATS, null, null);
+    }
+
+    /*
+        @return every value of the cursor, as text, which it then closes
+     */
+    private static String[][] readAll(Cursor cursor) {
+        String[][] rows = new String[cursor.getCount()][];
+        for (int row = 0; cursor.moveToNext(); row++) {
+            rows[row] = new String[cursor.getColumnCount()];
+            for (int column = 0; column < rows[row].length; column++) {
+                rows[row][column] = cursor.getString(column);
+            }
+        }
+        cursor.close();
+        return rows;
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastPager extends AndroidTestCase {
+
+    // Two full pages and a bit
+    private static final int DAYS = 2 * ForecastPager.PAGE_SIZE + 7;
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE
+    };
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationRowId);
+            values[i].put(WeatherEntry.COLUMN_DATE, mToday + i * DateUtils.DAY_IN_MILLIS);
+        }
+        // and a day in the past, which no page holds
+        ContentValues yesterday = TestUtilities.createWeatherValues(locationRowId);
+        yesterday.put(WeatherEntry.COLUMN_DATE, mToday - DateUtils.DAY_IN_MILLIS);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, yesterday);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testPageStartsAfterTheGivenDate() {
+        long after = WeatherContract.normalizeDate(mToday + 3 * DateUtils.DAY_IN_MILLIS);
+        Cursor cursor = mContext.getContentResolver().query(WeatherContract.buildPageUri(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), after, 5),
+                COLUMNS, null, null, null);
+        assertEquals(5, cursor.getCount());
+        for (int i = 4; cursor.moveToNext(); i++) {
+            assertEquals(WeatherContract.normalizeDate(mToday + i * DateUtils.DAY_IN_MILLIS),
+                    cursor.getLong(1));
+        }
+        cursor.close();
+    }
+
+    public void testPagerReadsEveryDayOnce() {
+        ForecastPager pager = ForecastPager.newSynchronousPager(mContext.getContentResolver(),
+                COLUMNS);
+        pager.reset(TestUtilities.TEST_LOCATION);
+        assertEquals(ForecastPager.PAGE_SIZE, pager.getCount());
+        assertFalse(pager.isComplete());
+
+        assertEquals(DAYS, pager.readToEnd());
+        assertTrue(pager.isComplete());
+
+        // Back to front, so the dropped pages have to be read again
+        for (int position = DAYS - 1; position >= 0; position--) {
+            Cursor cursor = pager.moveToPosition(position);
+            assertNotNull("Error: no row at " + position, cursor);
+            assertEquals(WeatherContract.normalizeDate(
+                    mToday + position * DateUtils.DAY_IN_MILLIS), cursor.getLong(1));
+        }
+        assertNull(pager.moveToPosition(DAYS));
+        pager.close();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
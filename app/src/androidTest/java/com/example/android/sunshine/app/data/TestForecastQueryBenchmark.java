@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Times the forecast list query through the provider with 1, 50 and 500 locations, each
+    holding a year of history and two weeks of forecast, with and without the location-first
+    index.  The numbers are only logged: they depend too much on the device to assert on.
+ */
+public class TestForecastQueryBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastQueryBenchmark.class.getSimpleName();
+
+    private static final int HISTORY_DAYS = 365;
+    private static final int FORECAST_DAYS = 14;
+    private static final int QUERIES = 50;
+
+    // Mirrors the projection of the forecast list
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private WeatherDbHelper mDbHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDbHelper = new WeatherDbHelper(mContext);
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    public void testForecastListQueryBenchmark() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int stored = 0;
+        for (int locations : new int[]{1, 50, 500}) {
+            stored = insertLocations(stored, locations, today);
+            long indexed = timeListQuery(locations, today);
+
+            SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            db.execSQL("DROP INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX);
+            long unindexed;
+            try {
+                unindexed = timeListQuery(locations, today);
+            } finally {
+                // Leave the schema as we found it
+                db.execSQL(WeatherDbHelper.SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+            }
+
+            Log.i(LOG_TAG, "locations=" + locations
+                    + " rows=" + locations * (HISTORY_DAYS + FORECAST_DAYS)
+                    + " median with index=" + indexed / 1000 + "us"
+                    + " without=" + unindexed / 1000 + "us");
+        }
+    }
+
+    /*
+        Tops the database up to the given number of locations.
+
+        @return the number of locations now stored
+     */
+    private int insertLocations(int from, int to, long today) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = from; i < to; i++) {
+                ContentValues location = new ContentValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting(i));
+                location.put(LocationEntry.COLUMN_CITY_NAME, "City " + i);
+                location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+                location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+                assertTrue(locationId != -1);
+
+                ContentValues weather = TestUtilities.createWeatherValues(locationId);
+                for (int day = -HISTORY_DAYS; day < FORECAST_DAYS; day++) {
+                    weather.put(WeatherEntry.COLUMN_DATE, today + day * DateUtils.DAY_IN_MILLIS);
+                    db.insert(WeatherEntry.TABLE_NAME, null, weather);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return to;
+    }
+
+    /*
+        @return the median time of the list query for a location, in nanoseconds
+     */
+    private long timeListQuery(int locations, long today) {
+        long[] elapsed = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(
+                    locationSetting(i * 7919 % locations), today);
+            // The rows were written behind the provider's back, and it's the query we time
+            TestUtilities.clearForecastCache(mContext);
+            long start = System.nanoTime();
+            Cursor cursor = mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            assertNotNull(cursor);
+            // Fills the window, which is when the query actually runs
+            assertEquals(FORECAST_DAYS, cursor.getCount());
+            elapsed[i] = System.nanoTime() - start;
+            cursor.close();
+        }
+        Arrays.sort(elapsed);
+        return elapsed[QUERIES / 2];
+    }
+
+    private static String locationSetting(int i) {
+        return "bench" + i;
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestNotificationCoalescer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNotificationCoalescer.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+
+    private CountingResolver mResolver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = new CountingResolver();
+    }
+
+    public void testBatchNotifiesOncePerUriAfterCommit() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(mResolver, 0);
+        Uri locationUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+
+        boolean outermost = coalescer.beginBatch();
+        assertTrue(outermost);
+        coalescer.notifyChange(locationUri);
+        coalescer.notifyChange(locationUri);
+        // A nested batch leaves the sending to the outer one
+        boolean nested = coalescer.beginBatch();
+        assertFalse(nested);
+        coalescer.notifyChange(LocationEntry.CONTENT_URI);
+        coalescer.endBatch(nested, true);
+        assertTrue("Error: notified before the batch committed", mResolver.getNotified().isEmpty());
+
+        coalescer.endBatch(outermost, true);
+        assertEquals(2, mResolver.getNotified().size());
+        assertTrue(mResolver.getNotified().contains(locationUri));
+        assertTrue(mResolver.getNotified().contains(LocationEntry.CONTENT_URI));
+    }
+
+    public void testRolledBackBatchNotifiesNothing() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(mResolver, 0);
+        boolean outermost = coalescer.beginBatch();
+        coalescer.notifyChange(WeatherEntry.CONTENT_URI);
+        coalescer.endBatch(outermost, false);
+        assertTrue(mResolver.getNotified().isEmpty());
+
+        // and the next change goes out straight away
+        coalescer.notifyChange(WeatherEntry.CONTENT_URI);
+        assertEquals(Collections.singletonList(WeatherEntry.CONTENT_URI), mResolver.getNotified());
+    }
+
+    public void testDescendantsAreLeftOut() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(mResolver, 0);
+        boolean outermost = coalescer.beginBatch();
+        coalescer.notifyChange(dayUri(0));
+        coalescer.notifyChange(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        coalescer.notifyChange(WeatherEntry.CONTENT_URI);
+        coalescer.endBatch(outermost, true);
+        assertEquals(Collections.singletonList(WeatherEntry.CONTENT_URI), mResolver.getNotified());
+    }
+
+    public void testDebounceGathersChanges() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(mResolver, 200);
+        for (int day = 0; day < FORECAST_DAYS; day++) {
+            coalescer.notifyChange(dayUri(day));
+        }
+        coalescer.notifyChange(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        assertTrue("Error: notified within the window", mResolver.getNotified().isEmpty());
+
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return !mResolver.getNotified().isEmpty();
+            }
+        }.run();
+        assertEquals(Collections.singletonList(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION)),
+                mResolver.getNotified());
+    }
+
+    /*
+        Replays the notifications of one sync of a location as the provider used to send them,
+        one per call and per changed day, and as it sends them now, and counts the reloads each
+        would cause for the forecast list.
+     */
+    public void testReloadsPerSync() {
+        NotificationCoalescer before = new NotificationCoalescer(mResolver, 0);
+        replaySync(before);
+        int reloadsBefore = countForecastReloads();
+
+        mResolver.getNotified().clear();
+        NotificationCoalescer after = new NotificationCoalescer(mResolver, 0);
+        boolean outermost = after.beginBatch();
+        replaySync(after);
+        after.endBatch(outermost, true);
+        int reloadsAfter = countForecastReloads();
+
+        Log.i(LOG_TAG, "reloads per sync before=" + reloadsBefore + " after=" + reloadsAfter);
+        // Every day of the forecast and the deletion of the past days
+        assertEquals(FORECAST_DAYS + 1, reloadsBefore);
+        assertEquals(1, reloadsAfter);
+    }
+
+    /*
+        @return the number of notifications that reach the forecast list
+     */
+    private int countForecastReloads() {
+        int reloads = 0;
+        for (Uri uri : mResolver.getNotified()) {
+            if (WeatherContract.PATH_WEATHER.equals(uri.getPathSegments().get(0))) {
+                reloads++;
+            }
+        }
+        return reloads;
+    }
+
+    private static Uri dayUri(int day) {
+        return WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS);
+    }
+
+    private static void replaySync(NotificationCoalescer coalescer) {
+        coalescer.notifyChange(LocationEntry.CONTENT_URI);
+        for (int day = 0; day < FORECAST_DAYS; day++) {
+            coalescer.notifyChange(dayUri(day));
+        }
+        coalescer.notifyChange(WeatherEntry.CONTENT_URI);
+    }
+
+    /*
+        Records the notifications instead of sending them.
+     */
+    static class CountingResolver extends MockContentResolver {
+        private final List<Uri> mNotified = Collections.synchronizedList(new ArrayList<Uri>());
+
+        @Override
+        public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+            mNotified.add(uri);
+        }
+
+        List<Uri> getNotified() {
+            return mNotified;
+        }
+    }
+}
@@ -16,8 +16,10 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
@@ -25,11 +27,14 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
 import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -422,7 +427,7 @@ public class TestProvider extends AndroidTestCase {
     }
 
 
-    static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
+    static final int BULK_INSERT_RECORDS_TO_INSERT = 10;
     static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
         long millisecondsInADay = 1000*60*60*24;
@@ -512,4 +517,267 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Bulk inserting a forecast over the same days again should only write the days whose
+        values changed, keep the row ids of the stored days, and notify the days it wrote.
+     */
+    public void testBulkInsertReconcilesStoredRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        long[] rowIds = getWeatherRowIds();
+
+        // The very same forecast again changes nothing
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: unchanged rows were written again", 0, insertCount);
+
+        // Change one day, and watch that day
+        int changedDay = 3;
+        ContentValues[] changedContentValues = createBulkInsertWeatherValues(locationRowId);
+        changedContentValues[changedDay].put(WeatherEntry.COLUMN_MAX_TEMP, 100);
+        Uri changedDayUri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                bulkInsertContentValues[changedDay].getAsLong(WeatherEntry.COLUMN_DATE));
+
+        TestUtilities.TestContentObserver dayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(changedDayUri, false, dayObserver);
+
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, changedContentValues);
+
+        dayObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(dayObserver);
+
+        assertEquals("Error: only the changed day should be written", 1, insertCount);
+
+        long[] newRowIds = getWeatherRowIds();
+        assertEquals(rowIds.length, newRowIds.length);
+        for (int i = 0; i < rowIds.length; i++) {
+            assertEquals("Error: the row id of day " + i + " changed", rowIds[i], newRowIds[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(changedDayUri, null, null, null, null);
+        TestUtilities.validateCursor("testBulkInsertReconcilesStoredRows. Error validating changed day.",
+                cursor, changedContentValues[changedDay]);
+    }
+
+    /*
+        The batch path reconciles like bulkInsert, and notifies the location once.
+     */
+    public void testInsertBatchReconcilesStoredRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                createWeatherBatch(weatherValues).insert(mContext.getContentResolver()));
+        long[] rowIds = getWeatherRowIds();
+
+        // The very same forecast again changes nothing
+        assertEquals("Error: unchanged rows were written again", 0,
+                createWeatherBatch(weatherValues).insert(mContext.getContentResolver()));
+
+        int changedDay = 3;
+        weatherValues[changedDay].put(WeatherEntry.COLUMN_MAX_TEMP, 100);
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), false,
+                locationObserver);
+
+        int insertCount = createWeatherBatch(weatherValues).insert(mContext.getContentResolver());
+
+        locationObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+
+        assertEquals("Error: only the changed day should be written", 1, insertCount);
+        long[] newRowIds = getWeatherRowIds();
+        assertEquals(rowIds.length, newRowIds.length);
+        for (int i = 0; i < rowIds.length; i++) {
+            assertEquals("Error: the row id of day " + i + " changed", rowIds[i], newRowIds[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        weatherValues[changedDay].getAsLong(WeatherEntry.COLUMN_DATE)),
+                null, null, null, null);
+        TestUtilities.validateCursor("testInsertBatchReconcilesStoredRows. Error validating changed day.",
+                cursor, weatherValues[changedDay]);
+    }
+
+    /*
+        A batch can carry its location and the deletion of past days, all written together.  The
+        location is stored already, so the batch should write its rows against that one.
+     */
+    public void testInsertBatchWithLocationAndDelete() {
+        long storedLocationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues pastDay = TestUtilities.createWeatherValues(storedLocationId);
+        pastDay.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE - DateUtils.DAY_IN_MILLIS);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, pastDay);
+
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        WeatherBatch batch = new WeatherBatch();
+        long locationId = batch.addLocation(
+                location.getAsString(LocationEntry.COLUMN_LOCATION_SETTING),
+                location.getAsString(LocationEntry.COLUMN_CITY_NAME),
+                location.getAsDouble(LocationEntry.COLUMN_COORD_LAT),
+                location.getAsDouble(LocationEntry.COLUMN_COORD_LONG));
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationId);
+        for (ContentValues values : weatherValues) {
+            batch.add(locationId,
+                    values.getAsLong(WeatherEntry.COLUMN_DATE),
+                    values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    values.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    values.getAsDouble(WeatherEntry.COLUMN_DEGREES),
+                    values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    values.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        }
+        batch.setDeleteUpTo(WeatherContract.normalizeDate(TestUtilities.TEST_DATE) - 1);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, batch.insert(mContext.getContentResolver()));
+        assertEquals("Error: the past day wasn't deleted", 1, batch.getDeleted());
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        TestUtilities.validateCursor("testInsertBatchWithLocationAndDelete. Error validating location.",
+                cursor, location);
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testInsertLocationReturnsStoredLocation() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        Uri sameLocationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                testValues);
+        assertEquals("Error: the location was stored twice",
+                ContentUris.parseId(locationUri), ContentUris.parseId(sameLocationUri));
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        The operations of a batch either all happen or none does, and observers only hear of
+        them once they have.
+     */
+    public void testApplyBatchIsAtomic() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        // Fails: there is only the location just inserted
+        operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                .withExpectedCount(2)
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("Error: the assertion should have failed");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: the failed batch wasn't rolled back", 0, cursor.getCount());
+        cursor.close();
+
+        operations.clear();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(TestUtilities.createWeatherValues(0))
+                .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                .build());
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                weatherObserver);
+
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testTodaySnapshot() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        TodaySnapshot today = TodaySnapshot.query(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        assertNotNull("Error: no snapshot for a stored day", today);
+        assertTrue(today.isForDay(TestUtilities.TEST_DATE));
+        assertEquals(weatherValues[0].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                today.getWeatherId());
+        assertEquals(weatherValues[0].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                today.getMaxTemp());
+        assertEquals(weatherValues[0].getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                today.getMinTemp());
+        assertEquals(weatherValues[0].getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                today.getShortDesc());
+
+        // A write replaces the snapshot
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Comets");
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values, null, null);
+        today = TodaySnapshot.query(mContext.getContentResolver(), TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        assertEquals("Comets", today.getShortDesc());
+
+        long afterLastDay = weatherValues[BULK_INSERT_RECORDS_TO_INSERT - 1]
+                .getAsLong(WeatherEntry.COLUMN_DATE) + DateUtils.DAY_IN_MILLIS;
+        assertNull("Error: a snapshot without any day stored", TodaySnapshot.query(
+                mContext.getContentResolver(), TestUtilities.TEST_LOCATION, afterLastDay));
+    }
+
+    static WeatherBatch createWeatherBatch(ContentValues[] weatherValues) {
+        WeatherBatch batch = new WeatherBatch(weatherValues.length);
+        for (ContentValues values : weatherValues) {
+            batch.add(values.getAsLong(WeatherEntry.COLUMN_LOC_KEY),
+                    values.getAsLong(WeatherEntry.COLUMN_DATE),
+                    values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    values.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    values.getAsDouble(WeatherEntry.COLUMN_DEGREES),
+                    values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    values.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        }
+        return batch;
+    }
+
+    private long[] getWeatherRowIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] rowIds = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            rowIds[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return rowIds;
+    }
 }
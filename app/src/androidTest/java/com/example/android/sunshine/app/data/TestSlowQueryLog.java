@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestSlowQueryLog extends AndroidTestCase {
+
+    private WeatherDbHelper mDbHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDbHelper = new WeatherDbHelper(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    /*
+        With no threshold every query is slow, and is kept with its plan.
+     */
+    public void testSlowQueryIsExplained() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        SlowQueryLog log = new SlowQueryLog(0, SlowQueryLog.MAX_ENTRIES);
+        String selection = WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                + WeatherEntry.COLUMN_DATE + " >= ?";
+        String[] selectionArgs = new String[]{"1", "0"};
+
+        long start = log.start();
+        log.setSql(SQLiteQueryBuilder.buildQueryString(false, WeatherEntry.TABLE_NAME, null,
+                selection, null, null, null, null));
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null, selection, selectionArgs, null,
+                null, null);
+        log.onQuery(db, WeatherEntry.CONTENT_URI, null, selection, selectionArgs, cursor, start);
+        cursor.close();
+
+        String text = log.export();
+        assertTrue("Error: the query wasn't logged: " + text,
+                text.contains(WeatherEntry.CONTENT_URI.toString()));
+        assertTrue("Error: the query was logged without its selection: " + text,
+                text.contains(selection));
+        // The location-first index serves the query
+        assertTrue("Error: the plan wasn't logged: " + text, text.contains("INDEX"));
+    }
+
+    public void testFastCallsAreNotLogged() {
+        SlowQueryLog log = new SlowQueryLog(Long.MAX_VALUE, SlowQueryLog.MAX_ENTRIES);
+        log.onWrite("delete", WeatherEntry.CONTENT_URI, null, null, 0, log.start());
+        assertEquals("", log.export());
+    }
+
+    public void testLogKeepsTheLastEntries() {
+        SlowQueryLog log = new SlowQueryLog(0, 2);
+        for (int i = 0; i < 3; i++) {
+            log.onWrite("delete", WeatherEntry.buildWeatherUri(i), null, null, 0, log.start());
+        }
+        String text = log.export();
+        assertFalse("Error: the oldest entry was kept: " + text,
+                text.contains(WeatherEntry.buildWeatherUri(0).toString() + " "));
+        assertTrue(text.contains(WeatherEntry.buildWeatherUri(1).toString() + " "));
+        assertTrue(text.contains(WeatherEntry.buildWeatherUri(2).toString() + " "));
+    }
+}
@@ -36,6 +36,12 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_SYNC_METRIC_DIR = WeatherContract.SyncMetricEntry.CONTENT_URI;
+    private static final Uri TEST_ARCHIVE_DIR = WeatherContract.ArchiveEntry.CONTENT_URI;
+    private static final Uri TEST_ARCHIVE_WITH_LOCATION_DIR = WeatherContract.ArchiveEntry.buildArchiveLocationWithRange(LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    private static final Uri TEST_ARCHIVE_WEEKS_DIR = WeatherContract.ArchiveEntry.buildWeeksWithRange(LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    private static final Uri TEST_ARCHIVE_MONTHS_DIR = WeatherContract.ArchiveEntry.buildMonthsWithRange(LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    private static final Uri TEST_ARCHIVE_AGGREGATE_DIR = WeatherContract.AggregateEntry.CONTENT_URI;
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +59,17 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The SYNC METRIC URI was matched incorrectly.",
+                testMatcher.match(TEST_SYNC_METRIC_DIR), WeatherProvider.SYNC_METRIC);
+        assertEquals("Error: The ARCHIVE URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_DIR), WeatherProvider.ARCHIVE);
+        assertEquals("Error: The ARCHIVE WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_WITH_LOCATION_DIR), WeatherProvider.ARCHIVE_WITH_LOCATION);
+        assertEquals("Error: The ARCHIVE WEEKS URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_WEEKS_DIR), WeatherProvider.ARCHIVE_WEEKS_WITH_LOCATION);
+        assertEquals("Error: The ARCHIVE MONTHS URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_MONTHS_DIR), WeatherProvider.ARCHIVE_MONTHS_WITH_LOCATION);
+        assertEquals("Error: The ARCHIVE AGGREGATE URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_AGGREGATE_DIR), WeatherProvider.ARCHIVE_AGGREGATE);
     }
 }
@@ -111,6 +111,15 @@ public class TestUtilities extends AndroidTestCase {
         return locationRowId;
     }
 
+    /*
+        Empties the forecast cache of the provider, for tests that write to the database
+        directly or that time the queries themselves.
+     */
+    static void clearForecastCache(Context context) {
+        context.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.METHOD_CLEAR_CACHE, null, null);
+    }
+
     /*
         Students: The functions we provide inside of TestProvider use this utility class to test
         the ContentObserver callbacks using the PollingCheck class that we grabbed from the Android
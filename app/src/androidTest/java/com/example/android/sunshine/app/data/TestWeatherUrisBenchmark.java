@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.UriMatcher;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Checks the interned weather URIs against freshly built ones, then times what the provider
+    does with the URI of each day of a forecast, building it, matching it and reading the
+    location and the date back out, with fresh URIs and with interned ones.  The numbers are
+    only logged: they depend too much on the device to assert on.
+ */
+public class TestWeatherUrisBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherUrisBenchmark.class.getSimpleName();
+
+    // Includes a slash to make sure the interned URIs are quoted too
+    private static final String LOCATION = "/North Pole";
+    private static final int FORECAST_DAYS = 14;
+    private static final int ROUNDS = 50;
+
+    public void testInternedUrisMatchFreshOnes() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        assertEquals(buildFreshLocation(LOCATION), WeatherEntry.buildWeatherLocation(LOCATION));
+        assertSame(WeatherEntry.buildWeatherLocation(LOCATION),
+                WeatherEntry.buildWeatherLocation(LOCATION));
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            // Not normalized, the interned URIs are of the day
+            long date = today + i * DateUtils.DAY_IN_MILLIS + DateUtils.HOUR_IN_MILLIS;
+            Uri uri = WeatherEntry.buildWeatherLocationWithDate(LOCATION, date);
+            assertEquals(buildFreshDate(LOCATION, date), uri);
+            assertSame(uri, WeatherEntry.buildWeatherLocationWithDate(LOCATION, date));
+            assertEquals(LOCATION, WeatherEntry.getLocationSettingFromUri(uri));
+            assertEquals(WeatherContract.normalizeDate(date), WeatherEntry.getDateFromUri(uri));
+
+            Uri startUri = WeatherEntry.buildWeatherLocationWithStartDate(LOCATION, date);
+            assertEquals(buildFreshStartDate(LOCATION, date), startUri);
+            assertEquals(WeatherContract.normalizeDate(date),
+                    WeatherEntry.getStartDateFromUri(startUri));
+        }
+        // URIs that weren't interned are read as before
+        Uri fresh = Uri.parse(buildFreshDate(LOCATION, today).toString());
+        assertEquals(LOCATION, WeatherEntry.getLocationSettingFromUri(fresh));
+        assertEquals(today, WeatherEntry.getDateFromUri(fresh));
+        assertEquals(0, WeatherEntry.getStartDateFromUri(
+                WeatherEntry.buildWeatherLocation(LOCATION)));
+    }
+
+    public void testQueryDispatchBenchmark() {
+        UriMatcher matcher = WeatherProvider.buildUriMatcher();
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        // Warms both up first
+        timeFresh(matcher, today);
+        timeInterned(matcher, today);
+        long fresh = timeFresh(matcher, today);
+        long interned = timeInterned(matcher, today);
+        Log.i(LOG_TAG, "days=" + FORECAST_DAYS + " median per round with fresh uris="
+                + fresh / 1000 + "us with interned uris=" + interned / 1000 + "us");
+    }
+
+    /*
+        @return the median time to build, match and read the URI of each day of the forecast
+        with a new Uri.Builder per day, in nanoseconds
+     */
+    private long timeFresh(UriMatcher matcher, long today) {
+        long[] elapsed = new long[ROUNDS];
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < FORECAST_DAYS; i++) {
+                Uri uri = buildFreshDate(LOCATION, today + i * DateUtils.DAY_IN_MILLIS);
+                sum += matcher.match(uri);
+                sum += uri.getPathSegments().get(1).length();
+                sum += Long.parseLong(uri.getPathSegments().get(2));
+            }
+            elapsed[round] = System.nanoTime() - start;
+        }
+        // Keeps the work from being optimized away
+        assertTrue(sum != 0);
+        Arrays.sort(elapsed);
+        return elapsed[ROUNDS / 2];
+    }
+
+    private long timeInterned(UriMatcher matcher, long today) {
+        long[] elapsed = new long[ROUNDS];
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < FORECAST_DAYS; i++) {
+                Uri uri = WeatherEntry.buildWeatherLocationWithDate(LOCATION,
+                        today + i * DateUtils.DAY_IN_MILLIS);
+                sum += matcher.match(uri);
+                sum += WeatherEntry.getLocationSettingFromUri(uri).length();
+                sum += WeatherEntry.getDateFromUri(uri);
+            }
+            elapsed[round] = System.nanoTime() - start;
+        }
+        assertTrue(sum != 0);
+        Arrays.sort(elapsed);
+        return elapsed[ROUNDS / 2];
+    }
+
+    /*
+        The builders the interned URIs replaced, as they were.
+     */
+    private static Uri buildFreshLocation(String locationSetting) {
+        return WeatherEntry.CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+    }
+
+    private static Uri buildFreshDate(String locationSetting, long date) {
+        return WeatherEntry.CONTENT_URI.buildUpon().appendPath(locationSetting)
+                .appendPath(Long.toString(WeatherContract.normalizeDate(date))).build();
+    }
+
+    private static Uri buildFreshStartDate(String locationSetting, long startDate) {
+        return WeatherEntry.CONTENT_URI.buildUpon().appendPath(locationSetting)
+                .appendQueryParameter(WeatherEntry.COLUMN_DATE,
+                        Long.toString(WeatherContract.normalizeDate(startDate))).build();
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    A minimal HTTP server on the loopback interface that stands in for OpenWeatherMap, so the
+    sync can be load tested without a network.  It answers every request with a generated
+    forecast for the location in its "q" parameter, or with a recorded payload, after a delay.
+    A share of the requests can be made to fail with an HTTP error.  Given an ETag, it sends it
+    along and answers the requests that already hold it with a 304.  It keeps count of the
+    requests it served, of the 304s among them and of how many it was serving at the same time.
+
+    The settings can be changed while the server runs, they apply from the next request.
+ */
+class FakeWeatherServer {
+
+    private final ServerSocket mServerSocket;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final Random mRandom = new Random();
+    private volatile long mLatencyMillis;
+    private volatile int mDays;
+    private volatile String mPayload;
+    private volatile double mErrorRate;
+    private volatile int mErrorCode = HttpURLConnection.HTTP_INTERNAL_ERROR;
+    private volatile String mETag;
+
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+
+    FakeWeatherServer(long latencyMillis, int days) throws IOException {
+        mLatencyMillis = latencyMillis;
+        mDays = days;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        });
+    }
+
+    /*
+        The base URL to hand to OpenWeatherMapSource.
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/forecast/daily?";
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /*
+        The number of days in generated forecasts, which sets the size of the responses.
+     */
+    void setDays(int days) {
+        mDays = days;
+    }
+
+    /*
+        Serves the given body, e.g. a recorded response, instead of generated forecasts.  Null
+        goes back to generated forecasts.
+     */
+    void setPayload(String payload) {
+        mPayload = payload;
+    }
+
+    /*
+        Answers the given share of requests, between 0 and 1, with the given HTTP status and
+        no forecast.
+     */
+    void setErrors(double errorRate, int errorCode) {
+        mErrorCode = errorCode;
+        mErrorRate = errorRate;
+    }
+
+    /*
+        Sends the ETag with every forecast and answers the requests whose If-None-Match holds
+        it with a 304.  Null sends none.
+     */
+    void setETag(String eTag) {
+        mETag = eTag;
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    int getMaxInFlight() {
+        return mMaxInFlight.get();
+    }
+
+    void shutdown() throws IOException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                // closed by shutdown()
+                return;
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        int inFlight = mInFlight.incrementAndGet();
+        int max;
+        while (inFlight > (max = mMaxInFlight.get())) {
+            mMaxInFlight.compareAndSet(max, inFlight);
+        }
+        try {
+            BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String requestLine = reader.readLine();
+            String line = reader.readLine();
+            // skip the headers but the one validator we know
+            String ifNoneMatch = null;
+            while (line != null && line.length() > 0) {
+                if (line.regionMatches(true, 0, "If-None-Match:", 0, 14)) {
+                    ifNoneMatch = line.substring(14).trim();
+                }
+                line = reader.readLine();
+            }
+            mRequestCount.incrementAndGet();
+
+            String path = requestLine.split(" ")[1];
+            String location = Uri.parse("http://localhost" + path).getQueryParameter("q");
+
+            Thread.sleep(mLatencyMillis);
+
+            OutputStream out = socket.getOutputStream();
+            double errorRate = mErrorRate;
+            if (errorRate > 0 && mRandom.nextDouble() < errorRate) {
+                out.write(("HTTP/1.1 " + mErrorCode + " Error\r\n"
+                        + "Content-Length: 0\r\n"
+                        + "Connection: close\r\n\r\n").getBytes("UTF-8"));
+                out.flush();
+                return;
+            }
+
+            String eTag = mETag;
+            if (eTag != null && eTag.equals(ifNoneMatch)) {
+                mNotModifiedCount.incrementAndGet();
+                out.write(("HTTP/1.1 304 Not Modified\r\n"
+                        + "ETag: " + eTag + "\r\n"
+                        + "Connection: close\r\n\r\n").getBytes("UTF-8"));
+                out.flush();
+                return;
+            }
+
+            String payload = mPayload;
+            if (payload == null) {
+                payload = TestForecastParser.createForecastJson(mDays)
+                        .replace("Mountain View", location);
+            }
+            byte[] body = payload.getBytes("UTF-8");
+            out.write(("HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + (eTag != null ? "ETag: " + eTag + "\r\n" : "")
+                    + "Connection: close\r\n\r\n").getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            // the client went away, nothing to do
+        } finally {
+            mInFlight.decrementAndGet();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
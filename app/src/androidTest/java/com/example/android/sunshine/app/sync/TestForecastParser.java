@@ -0,0 +1,194 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.Debug;
+import android.support.v4.os.OperationCanceledException;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+public class TestForecastParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastParser.class.getSimpleName();
+
+    private static final int BENCHMARK_ITERATIONS = 20;
+
+    /*
+        Builds a payload shaped like the OWM daily forecast response, with the given number of
+        entries in the "list" array.
+     */
+    static String createForecastJson(int count) {
+        StringBuilder json = new StringBuilder(256 + count * 320);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0115,\"cnt\":").append(count)
+                .append(",\"list\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(1419033600L + i * 86400L)
+                    .append(",\"temp\":{\"day\":12.5,\"min\":").append(5 + i % 7)
+                    .append(".25,\"max\":").append(15 + i % 9)
+                    .append(".75,\"night\":6.1,\"eve\":11.2,\"morn\":5.5},")
+                    .append("\"pressure\":1021.").append(i % 10)
+                    .append(",\"humidity\":").append(40 + i % 50)
+                    .append(",\"weather\":[{\"id\":").append(800 + i % 5)
+                    .append(",\"main\":\"Clouds\",\"description\":\"few clouds\",\"icon\":\"02d\"}],")
+                    .append("\"speed\":3.").append(i % 10)
+                    .append(",\"deg\":").append(i % 360)
+                    .append(",\"clouds\":20}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    public void testParseMatchesJsonTree() throws Throwable {
+        String json = createForecastJson(14);
+        Forecast forecast = ForecastParser.parse(toStream(json));
+
+        JSONObject forecastJson = new JSONObject(json);
+        JSONArray list = forecastJson.getJSONArray("list");
+        JSONObject city = forecastJson.getJSONObject("city");
+
+        assertEquals(HttpURLConnection.HTTP_OK, forecast.getMessageCode());
+        assertEquals(city.getString("name"), forecast.getCityName());
+        assertEquals(city.getJSONObject("coord").getDouble("lat"), forecast.getCityLatitude());
+        assertEquals(city.getJSONObject("coord").getDouble("lon"), forecast.getCityLongitude());
+        assertEquals(list.length(), forecast.size());
+
+        for (int i = 0; i < list.length(); i++) {
+            JSONObject day = list.getJSONObject(i);
+            JSONObject weather = day.getJSONArray("weather").getJSONObject(0);
+            assertEquals(day.getDouble("pressure"), forecast.pressure[i]);
+            assertEquals(day.getInt("humidity"), forecast.humidity[i]);
+            assertEquals(day.getDouble("speed"), forecast.windSpeed[i]);
+            assertEquals(day.getDouble("deg"), forecast.windDirection[i]);
+            assertEquals(day.getJSONObject("temp").getDouble("max"), forecast.high[i]);
+            assertEquals(day.getJSONObject("temp").getDouble("min"), forecast.low[i]);
+            assertEquals(weather.getInt("id"), forecast.weatherId[i]);
+            assertEquals(weather.getString("main"), forecast.description[i]);
+        }
+    }
+
+    public void testParseErrorCode() throws Throwable {
+        Forecast forecast = ForecastParser.parse(
+                toStream("{\"cod\":\"404\",\"message\":\"Error: Not found city\"}"));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.getMessageCode());
+        assertEquals(0, forecast.size());
+    }
+
+    public void testParseRejectsIncompleteDay() throws Throwable {
+        String json = createForecastJson(3).replaceFirst("\"humidity\":\\d+,", "");
+        try {
+            ForecastParser.parse(toStream(json));
+            fail("Error: a day without humidity should not parse");
+        } catch (JSONException expected) {
+        }
+    }
+
+    public void testParseRejectsMalformedJson() throws Throwable {
+        String json = createForecastJson(3);
+        try {
+            ForecastParser.parse(toStream(json.substring(0, json.length() / 2) + "}"));
+            fail("Error: a truncated payload should not parse");
+        } catch (JSONException expected) {
+        }
+    }
+
+    public void testParseStopsWhenCanceled() throws Throwable {
+        SyncCancellation cancellation = new SyncCancellation();
+        cancellation.cancel();
+        try {
+            ForecastParser.parse(toStream(createForecastJson(3)), cancellation);
+            fail("Error: a canceled parse should not finish");
+        } catch (OperationCanceledException expected) {
+        }
+    }
+
+    /*
+        Compares the streaming decoder with the String + JSONObject path it replaced.  The
+        numbers are only logged: they depend too much on the device to assert on.
+     */
+    public void testParseBenchmark() throws Throwable {
+        for (int count : new int[]{14, 100, 1000}) {
+            byte[] payload = createForecastJson(count).getBytes("UTF-8");
+
+            // warm up both paths
+            parseLegacy(new ByteArrayInputStream(payload));
+            ForecastParser.parse(new ByteArrayInputStream(payload));
+
+            long[] legacy = measure(payload, true);
+            long[] streaming = measure(payload, false);
+
+            Log.i(LOG_TAG, "entries=" + count
+                    + " legacy: " + legacy[0] / 1000 + "us " + legacy[1] + "B"
+                    + " streaming: " + streaming[0] / 1000 + "us " + streaming[1] + "B");
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long[] measure(byte[] payload, boolean legacy) throws Exception {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            InputStream in = new ByteArrayInputStream(payload);
+            if (legacy) {
+                parseLegacy(in);
+            } else {
+                ForecastParser.parse(in);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        return new long[]{elapsed / BENCHMARK_ITERATIONS,
+                Debug.getThreadAllocSize() / BENCHMARK_ITERATIONS};
+    }
+
+    /*
+        The decoding SunshineSyncAdapter used to do: read the body line by line into a
+        StringBuffer, then build the JSONObject tree and walk it.
+     */
+    private static int parseLegacy(InputStream in) throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        JSONObject forecastJson = new JSONObject(buffer.toString());
+        JSONArray weatherArray = forecastJson.getJSONArray("list");
+        JSONObject cityJson = forecastJson.getJSONObject("city");
+        cityJson.getString("name");
+        cityJson.getJSONObject("coord").getDouble("lat");
+        int checksum = 0;
+        for (int i = 0; i < weatherArray.length(); i++) {
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+            dayForecast.getDouble("pressure");
+            dayForecast.getInt("humidity");
+            dayForecast.getDouble("speed");
+            dayForecast.getDouble("deg");
+            JSONObject weatherObject = dayForecast.getJSONArray("weather").getJSONObject(0);
+            weatherObject.getString("main");
+            checksum += weatherObject.getInt("id");
+            JSONObject temperatureObject = dayForecast.getJSONObject("temp");
+            temperatureObject.getDouble("max");
+            temperatureObject.getDouble("min");
+        }
+        return checksum;
+    }
+
+    private static InputStream toStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class TestMultiLocationSync extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestMultiLocationSync.class.getSimpleName();
+
+    private static final long LATENCY_MILLIS = 200;
+    private static final int MAX_CONCURRENT_FETCHES = 4;
+
+    private FakeWeatherServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new FakeWeatherServer(LATENCY_MILLIS, 14);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testFetchOneLocation() throws Throwable {
+        fetchAndCheck(1);
+    }
+
+    public void testFetchTenLocations() throws Throwable {
+        fetchAndCheck(10);
+    }
+
+    public void testFetchHundredLocations() throws Throwable {
+        fetchAndCheck(100);
+    }
+
+    /*
+        Fetches the given number of locations from the fake server and checks that every one of
+        them came back decoded, in order, without ever going over the concurrency bound, and in
+        about the time of one request per round of the pool.
+     */
+    private void fetchAndCheck(int locationCount) throws Throwable {
+        List<String> locationSettings = new ArrayList<String>(locationCount);
+        for (int i = 0; i < locationCount; i++) {
+            locationSettings.add("location-" + i);
+        }
+
+        MultiLocationSync sync = new MultiLocationSync(
+                new OpenWeatherMapSource(mServer.getBaseUrl()), MAX_CONCURRENT_FETCHES);
+        long start = System.nanoTime();
+        List<WeatherSource.Result> results =
+                sync.fetchAll(locationSettings, new HashMap<String, ForecastValidators>(), null);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Log.i(LOG_TAG, "locations=" + locationCount + " elapsed=" + elapsedMillis + "ms"
+                + " maxInFlight=" + mServer.getMaxInFlight());
+
+        assertEquals(locationCount, results.size());
+        assertEquals(locationCount, mServer.getRequestCount());
+        for (int i = 0; i < locationCount; i++) {
+            WeatherSource.Result result = results.get(i);
+            assertEquals("Error: results are out of order",
+                    locationSettings.get(i), result.getLocationSetting());
+            assertEquals("Error: fetch of " + result.getLocationSetting() + " failed",
+                    WeatherSource.Result.STATUS_FORECAST, result.getStatus());
+            assertEquals(locationSettings.get(i), result.getForecast().getCityName());
+            assertEquals(14, result.getForecast().size());
+        }
+
+        assertTrue("Error: more fetches in flight than the pool allows",
+                mServer.getMaxInFlight() <= MAX_CONCURRENT_FETCHES);
+
+        // Each round of the pool costs one request's latency; leave generous room for the
+        // decoding and the emulator.
+        int rounds = (locationCount + MAX_CONCURRENT_FETCHES - 1) / MAX_CONCURRENT_FETCHES;
+        assertTrue("Error: fetching " + locationCount + " locations took " + elapsedMillis + "ms",
+                elapsedMillis < rounds * LATENCY_MILLIS * 2 + 1000);
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import java.net.HttpURLConnection;
+
+public class TestRetryingWeatherSource extends AndroidTestCase {
+
+    private static final String BREAKER_NAME = TestRetryingWeatherSource.class.getSimpleName();
+    private static final String LOCATION = "94043";
+
+    private TestClockCircuitBreaker mCircuitBreaker;
+
+    /*
+        A breaker whose clock only moves when the test says so.
+     */
+    static class TestClockCircuitBreaker extends CircuitBreaker {
+        long mNow = 1000000;
+
+        TestClockCircuitBreaker(Context context) {
+            super(context, BREAKER_NAME);
+        }
+
+        @Override
+        long now() {
+            return mNow;
+        }
+    }
+
+    // Stand for failures without a response
+    static final int TIMEOUT = 0;
+    static final int NO_CONNECTION = -1;
+
+    /*
+        Answers each fetch with the next of the given HTTP codes, or TIMEOUT or NO_CONNECTION,
+        and keeps answering with the last one.
+     */
+    static class ScriptedSource implements WeatherSource {
+        private final int[] mHttpCodes;
+        int mRequests;
+
+        ScriptedSource(int... httpCodes) {
+            mHttpCodes = httpCodes;
+        }
+
+        @Override
+        public synchronized Result fetch(String locationSetting, ForecastValidators validators,
+                                         SyncCancellation cancellation) {
+            int httpCode = mHttpCodes[Math.min(mRequests, mHttpCodes.length - 1)];
+            mRequests++;
+            Result result = new Result(locationSetting);
+            result.mHttpCode = Math.max(httpCode, 0);
+            result.mTimedOut = httpCode == TIMEOUT;
+            result.mStatus = httpCode == HttpURLConnection.HTTP_OK
+                    ? Result.STATUS_FORECAST : Result.STATUS_SERVER_DOWN;
+            return result;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getSharedPreferences("circuit_breaker_" + BREAKER_NAME, 0).edit().clear().commit();
+        mCircuitBreaker = new TestClockCircuitBreaker(mContext);
+    }
+
+    public void testRetriesServerErrorsUntilSuccess() {
+        ScriptedSource source = new ScriptedSource(HttpURLConnection.HTTP_UNAVAILABLE, TIMEOUT,
+                HttpURLConnection.HTTP_OK);
+        WeatherSource.Result result = retrying(source, 3).fetch(LOCATION, null, null);
+
+        assertEquals(WeatherSource.Result.STATUS_FORECAST, result.getStatus());
+        assertEquals(3, result.getAttempts());
+        assertEquals(3, source.mRequests);
+        assertFalse(mCircuitBreaker.isOpen());
+    }
+
+    public void testDoesNotRetryClientErrors() {
+        ScriptedSource source = new ScriptedSource(HttpURLConnection.HTTP_FORBIDDEN);
+        WeatherSource.Result result = retrying(source, 3).fetch(LOCATION, null, null);
+
+        assertEquals(WeatherSource.Result.STATUS_SERVER_DOWN, result.getStatus());
+        assertEquals(1, source.mRequests);
+    }
+
+    /*
+        An offline device neither retries nor counts it against the server.
+     */
+    public void testDoesNotRetryOrCountConnectionFailures() {
+        ScriptedSource source = new ScriptedSource(NO_CONNECTION);
+        WeatherSource retrying = retrying(source, 3);
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            WeatherSource.Result result = retrying.fetch(LOCATION, null, null);
+            assertEquals(WeatherSource.Result.STATUS_SERVER_DOWN, result.getStatus());
+        }
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD, source.mRequests);
+        assertFalse(mCircuitBreaker.isOpen());
+    }
+
+    public void testGivesUpAfterMaxAttempts() {
+        ScriptedSource source = new ScriptedSource(HttpURLConnection.HTTP_BAD_GATEWAY);
+        WeatherSource.Result result = retrying(source, 3).fetch(LOCATION, null, null);
+
+        assertEquals(WeatherSource.Result.STATUS_SERVER_DOWN, result.getStatus());
+        assertEquals(3, source.mRequests);
+    }
+
+    /*
+        Enough failures open the circuit, after which requests stop until the cool-down is over.
+        A failed trial opens it again for longer, a good one closes it.
+     */
+    public void testCircuitOpensAndCloses() {
+        ScriptedSource failing = new ScriptedSource(HttpURLConnection.HTTP_INTERNAL_ERROR);
+        WeatherSource source = retrying(failing, 1);
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            source.fetch(LOCATION, null, null);
+        }
+        assertTrue(mCircuitBreaker.isOpen());
+        long firstOpenUntil = mCircuitBreaker.getOpenUntil();
+        assertEquals(mCircuitBreaker.mNow + CircuitBreaker.BASE_COOL_DOWN_MILLIS, firstOpenUntil);
+
+        assertEquals(WeatherSource.Result.STATUS_CIRCUIT_OPEN,
+                source.fetch(LOCATION, null, null).getStatus());
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD, failing.mRequests);
+
+        // The trial fails, the circuit opens for twice as long
+        mCircuitBreaker.mNow = firstOpenUntil;
+        source.fetch(LOCATION, null, null);
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD + 1, failing.mRequests);
+        assertTrue(mCircuitBreaker.isOpen());
+        assertEquals(firstOpenUntil + 2 * CircuitBreaker.BASE_COOL_DOWN_MILLIS,
+                mCircuitBreaker.getOpenUntil());
+
+        // The next trial succeeds and closes the circuit
+        mCircuitBreaker.mNow = mCircuitBreaker.getOpenUntil();
+        ScriptedSource healthy = new ScriptedSource(HttpURLConnection.HTTP_OK);
+        assertEquals(WeatherSource.Result.STATUS_FORECAST,
+                retrying(healthy, 1).fetch(LOCATION, null, null).getStatus());
+        assertFalse(mCircuitBreaker.isOpen());
+        assertEquals(0, mCircuitBreaker.getOpenUntil());
+    }
+
+    /*
+        The state of the breaker survives the process.
+     */
+    public void testCircuitStateIsKept() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            mCircuitBreaker.onFailure();
+        }
+        TestClockCircuitBreaker reloaded = new TestClockCircuitBreaker(mContext);
+        assertTrue(reloaded.isOpen());
+        assertEquals(mCircuitBreaker.getOpenUntil(), reloaded.getOpenUntil());
+    }
+
+    private WeatherSource retrying(WeatherSource source, int maxAttempts) {
+        // Keep the backoff short, the test is about the policy, not the waiting
+        return new RetryingWeatherSource(source, mCircuitBreaker, maxAttempts, 5, 20);
+    }
+}
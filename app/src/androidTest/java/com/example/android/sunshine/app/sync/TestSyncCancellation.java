@@ -0,0 +1,73 @@
+package com.example.android.sunshine.app.sync;
+
+import android.support.v4.os.OperationCanceledException;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSyncCancellation extends AndroidTestCase {
+
+    public void testCancelRunsListenersOnce() {
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        Runnable removed = new Runnable() {
+            @Override
+            public void run() {
+                fail("Error: a removed listener should not run");
+            }
+        };
+        SyncCancellation cancellation = new SyncCancellation();
+        cancellation.addListener(listener);
+        cancellation.addListener(removed);
+        cancellation.removeListener(removed);
+
+        cancellation.cancel();
+        cancellation.cancel();
+        assertTrue(cancellation.isCanceled());
+        assertEquals(1, runs.get());
+
+        // Too late to wait for it, the listener runs right away
+        cancellation.addListener(listener);
+        assertEquals(2, runs.get());
+    }
+
+    public void testThrowIfCanceled() {
+        SyncCancellation cancellation = new SyncCancellation();
+        cancellation.throwIfCanceled();
+        cancellation.cancel();
+        try {
+            cancellation.throwIfCanceled();
+            fail("Error: a canceled sync should throw");
+        } catch (OperationCanceledException expected) {
+        }
+    }
+
+    /*
+        A wait ends as soon as the sync is canceled, not when its time is up.
+     */
+    public void testCancelEndsSleep() throws Exception {
+        final SyncCancellation cancellation = new SyncCancellation();
+        assertTrue(cancellation.sleep(10));
+
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                cancellation.cancel();
+            }
+        }.start();
+        long start = System.nanoTime();
+        assertFalse(cancellation.sleep(10 * 1000));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("Error: the wait took " + elapsedMillis + "ms", elapsedMillis < 5000);
+    }
+}
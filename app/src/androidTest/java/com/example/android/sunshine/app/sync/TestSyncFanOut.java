@@ -0,0 +1,105 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class TestSyncFanOut extends AndroidTestCase {
+
+    private static final long TIMEOUT_MILLIS = 300;
+    private static final long STALL_MILLIS = 30 * 1000;
+
+    private SyncFanOut mFanOut;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFanOut = new SyncFanOut();
+    }
+
+    /*
+        A stalled consumer costs the fan-out its time limit, not its stall, it gets interrupted,
+        and neither it nor a failing consumer keep the others from finishing.
+     */
+    public void testSlowConsumerDoesNotHoldOthers() throws Throwable {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CountDownLatch fastRan = new CountDownLatch(1);
+
+        List<SyncFanOut.Consumer> consumers = new ArrayList<SyncFanOut.Consumer>();
+        consumers.add(new SyncFanOut.Consumer("stalled", TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(STALL_MILLIS);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        }));
+        consumers.add(new SyncFanOut.Consumer("failing", TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failing on purpose");
+            }
+        }));
+        consumers.add(new SyncFanOut.Consumer("fast", TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+                fastRan.countDown();
+            }
+        }));
+
+        long start = System.nanoTime();
+        List<SyncFanOut.Outcome> outcomes = mFanOut.run(consumers);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Error: the fan-out took " + elapsedMillis + "ms",
+                elapsedMillis < TIMEOUT_MILLIS + 1000);
+        assertEquals(3, outcomes.size());
+
+        assertEquals("stalled", outcomes.get(0).getName());
+        assertEquals(SyncFanOut.Outcome.RESULT_TIMED_OUT, outcomes.get(0).getResult());
+        assertEquals(TIMEOUT_MILLIS, outcomes.get(0).getLatencyMillis());
+        interrupted.await();
+
+        assertEquals(SyncFanOut.Outcome.RESULT_FAILED, outcomes.get(1).getResult());
+
+        assertEquals(SyncFanOut.Outcome.RESULT_OK, outcomes.get(2).getResult());
+        assertEquals(0, fastRan.getCount());
+        assertTrue(outcomes.get(2).getLatencyMillis() < TIMEOUT_MILLIS);
+    }
+
+    /*
+        Consumers run at the same time, so the fan-out takes as long as the slowest of them.
+     */
+    public void testConsumersRunConcurrently() throws Throwable {
+        final long sleepMillis = 200;
+        final int consumerCount = 4;
+        List<SyncFanOut.Consumer> consumers = new ArrayList<SyncFanOut.Consumer>();
+        for (int i = 0; i < consumerCount; i++) {
+            consumers.add(new SyncFanOut.Consumer("sleeper-" + i, STALL_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(sleepMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        List<SyncFanOut.Outcome> outcomes = mFanOut.run(consumers);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Error: the fan-out took " + elapsedMillis + "ms",
+                elapsedMillis < sleepMillis * consumerCount);
+        for (SyncFanOut.Outcome outcome : outcomes) {
+            assertEquals(SyncFanOut.Outcome.RESULT_OK, outcome.getResult());
+            assertTrue(outcome.getLatencyMillis() >= sleepMillis);
+        }
+    }
+}
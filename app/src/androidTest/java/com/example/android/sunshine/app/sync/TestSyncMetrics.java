@@ -0,0 +1,63 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncMetricEntry;
+
+import java.util.List;
+
+public class TestSyncMetrics extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(SyncMetricEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(SyncMetricEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testPercentile() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+        assertEquals(50, SyncMetrics.percentile(sorted, 100, 50));
+        assertEquals(95, SyncMetrics.percentile(sorted, 100, 95));
+        assertEquals(100, SyncMetrics.percentile(sorted, 100, 100));
+        assertEquals(1, SyncMetrics.percentile(sorted, 1, 95));
+        assertEquals(0, SyncMetrics.percentile(sorted, 0, 50));
+    }
+
+    /*
+        Phases saved by a couple of syncs come back summarized per phase, in phase order.
+     */
+    public void testSaveAndSummarize() {
+        for (int sync = 0; sync < 20; sync++) {
+            SyncMetrics metrics = new SyncMetrics();
+            metrics.add(SyncMetrics.PHASE_BULK_INSERT, sync + 1, 0, 14);
+            metrics.add(SyncMetrics.PHASE_CONNECT, 100, 0, 0);
+            metrics.save(mContext);
+        }
+
+        List<SyncMetrics.PhaseSummary> summaries = SyncMetrics.summarize(mContext);
+        assertEquals(3, summaries.size());
+
+        SyncMetrics.PhaseSummary bulkInsert = summaries.get(0);
+        assertEquals(SyncMetrics.PHASE_BULK_INSERT, bulkInsert.getPhase());
+        assertEquals(20, bulkInsert.getCount());
+        assertEquals(10, bulkInsert.getP50Millis());
+        assertEquals(19, bulkInsert.getP95Millis());
+
+        SyncMetrics.PhaseSummary connect = summaries.get(1);
+        assertEquals(SyncMetrics.PHASE_CONNECT, connect.getPhase());
+        assertEquals(100, connect.getP50Millis());
+        assertEquals(100, connect.getP95Millis());
+
+        assertEquals(SyncMetrics.PHASE_TOTAL, summaries.get(2).getPhase());
+        assertEquals(20, summaries.get(2).getCount());
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Runs whole syncs, from the fetch to the fan-out, against the stand-in server, so the
+    pipeline can be exercised and timed with no network.
+ */
+public class TestSyncPipeline extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncPipeline.class.getSimpleName();
+
+    private static final long LATENCY_MILLIS = 50;
+    private static final int DAYS = 14;
+    // Longer than the provider holds its notifications back
+    private static final long NOTIFY_SETTLE_MILLIS = 500;
+
+    private FakeWeatherServer mServer;
+    private CircuitBreaker mCircuitBreaker;
+    private SunshineSyncAdapter mSyncAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new FakeWeatherServer(LATENCY_MILLIS, DAYS);
+        mContext.getSharedPreferences("circuit_breaker_" + LOG_TAG, 0).edit().clear().commit();
+        mContext.getSharedPreferences("forecast_validators", 0).edit().clear().commit();
+        mCircuitBreaker = new CircuitBreaker(mContext, LOG_TAG);
+        mSyncAdapter = new SunshineSyncAdapter(mContext, false,
+                new OpenWeatherMapSource(mServer.getBaseUrl()), mCircuitBreaker);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testSyncStoresForecast() {
+        performSync();
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+        assertEquals(DAYS, countStoredDays());
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    /*
+        The stand-in sends the very same body again, which the sync recognises and leaves alone.
+     */
+    public void testRepeatedSyncKeepsForecast() {
+        performSync();
+        performSync();
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+        assertEquals(DAYS, countStoredDays());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    /*
+        The server sends the forecast with an ETag, answers the next sync with a 304, then sends
+        the very same body under another ETag.  Neither of the later syncs rewrites the stored
+        days, notifies their observers or lets the widgets and the rest know.
+     */
+    public void testUnchangedForecastIsLeftAlone() throws Exception {
+        long start = System.currentTimeMillis();
+        final AtomicInteger notifications = new AtomicInteger();
+        HandlerThread observerThread = new HandlerThread("ObserverThread");
+        observerThread.start();
+        ContentObserver observer = new ContentObserver(new Handler(observerThread.getLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                notifications.incrementAndGet();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, observer);
+        try {
+            mServer.setETag("\"1\"");
+            performSync();
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return notifications.get() > 0;
+                }
+            }.run();
+            Thread.sleep(NOTIFY_SETTLE_MILLIS);
+            long[] ids = queryStoredIds();
+            int notified = notifications.get();
+            assertEquals(DAYS, ids.length);
+            assertEquals(1, countFanOuts(start));
+
+            performSync();
+            assertEquals(1, mServer.getNotModifiedCount());
+
+            mServer.setETag("\"2\"");
+            performSync();
+            assertEquals(1, mServer.getNotModifiedCount());
+            assertEquals(3, mServer.getRequestCount());
+
+            Thread.sleep(NOTIFY_SETTLE_MILLIS);
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK,
+                    Utility.getLocationStatus(mContext));
+            assertTrue("Error: the stored days were rewritten",
+                    Arrays.equals(ids, queryStoredIds()));
+            assertEquals(notified, notifications.get());
+            assertEquals(1, countFanOuts(start));
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observerThread.quit();
+        }
+    }
+
+    public void testServerErrorReportsServerDown() {
+        mServer.setErrors(1, HttpURLConnection.HTTP_INTERNAL_ERROR);
+        performSync();
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+        assertEquals(0, countStoredDays());
+    }
+
+    /*
+        While the circuit is open the sync leaves the server alone, reports the backoff, and
+        asks the framework not to come back before the circuit lets a request through.
+     */
+    public void testOpenCircuitDelaysSync() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            mCircuitBreaker.onFailure();
+        }
+        mSyncAdapter = new SunshineSyncAdapter(mContext, false,
+                new RetryingWeatherSource(new OpenWeatherMapSource(mServer.getBaseUrl()),
+                        mCircuitBreaker),
+                mCircuitBreaker);
+
+        SyncResult syncResult = performSync();
+
+        assertEquals(0, mServer.getRequestCount());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_BACKOFF,
+                Utility.getLocationStatus(mContext));
+        assertEquals(mCircuitBreaker.getOpenUntil() / 1000, syncResult.delayUntil);
+    }
+
+    /*
+        A sync canceled while it waits on the server gives up at once and leaves the forecast
+        of the previous sync as it was.
+     */
+    public void testCanceledSyncKeepsForecast() throws Exception {
+        performSync();
+        mServer.setDays(7);
+        mServer.setLatencyMillis(10 * 1000);
+
+        Thread canceler = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mSyncAdapter.onSyncCanceled();
+            }
+        };
+        canceler.start();
+        long start = System.nanoTime();
+        performSync();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        canceler.join();
+
+        assertTrue("Error: the canceled sync took " + elapsedMillis + "ms", elapsedMillis < 5000);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+        assertEquals(DAYS, countStoredDays());
+    }
+
+    public void testRecordedPayloadIsStored() {
+        mServer.setPayload(TestForecastParser.createForecastJson(7));
+        performSync();
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+        assertEquals(7, countStoredDays());
+    }
+
+    /*
+        Not a pass/fail test, a load run: many syncs of large forecasts, some of them failing,
+        with the spread of their times logged.
+     */
+    public void testSyncUnderLoad() {
+        final int syncs = 20;
+        mServer.setDays(200);
+        mServer.setErrors(0.2, HttpURLConnection.HTTP_UNAVAILABLE);
+
+        long[] elapsedMillis = new long[syncs];
+        for (int i = 0; i < syncs; i++) {
+            // Start from scratch each time, so every good sync stores the whole forecast
+            mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+            long start = System.nanoTime();
+            performSync();
+            elapsedMillis[i] = (System.nanoTime() - start) / 1000000;
+
+            int status = Utility.getLocationStatus(mContext);
+            assertTrue("Error: unexpected location status " + status,
+                    status == SunshineSyncAdapter.LOCATION_STATUS_OK
+                            || status == SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        }
+        Arrays.sort(elapsedMillis);
+        Log.i(LOG_TAG, "syncs=" + syncs
+                + " p50=" + SyncMetrics.percentile(elapsedMillis, syncs, 50) + "ms"
+                + " p95=" + SyncMetrics.percentile(elapsedMillis, syncs, 95) + "ms");
+        assertEquals(syncs, mServer.getRequestCount());
+    }
+
+    private SyncResult performSync() {
+        SyncResult syncResult = new SyncResult();
+        mSyncAdapter.onPerformSync(null, new Bundle(),
+                mContext.getString(R.string.content_authority), null, syncResult);
+        return syncResult;
+    }
+
+    /*
+        @return the ids of the stored days of the preferred location, in date order
+     */
+    private long[] queryStoredIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(
+                        Utility.getPreferredLocation(mContext)),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "."
+                        + WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+
+    /*
+        @return how many syncs since the given time let the widgets know of a new forecast, as
+        recorded in the sync metrics
+     */
+    private int countFanOuts(long since) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.SyncMetricEntry.CONTENT_URI,
+                new String[]{WeatherContract.SyncMetricEntry._ID},
+                WeatherContract.SyncMetricEntry.COLUMN_PHASE + " = ? AND "
+                        + WeatherContract.SyncMetricEntry.COLUMN_SYNC_TIME + " >= ?",
+                new String[]{SyncMetrics.PHASE_FAN_OUT + "widgets", Long.toString(since)},
+                null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private int countStoredDays() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(
+                        Utility.getPreferredLocation(mContext)),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                null,
+                null,
+                null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.util.List;
+
+public class TestSyncScheduler extends AndroidTestCase {
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+
+    // Neither volatile nor stable, daytime, seen a few hours ago, on battery and Wi-Fi
+    private static final double USUAL_CHANGE_RATE = 0.3;
+    private static final int NOON = 12;
+    private static final long A_FEW_HOURS = HOUR_IN_MILLIS * 5;
+
+    public void testUsualConditionsKeepBasePeriod() {
+        SyncScheduler.Schedule schedule = SyncScheduler.computeSchedule(USUAL_CHANGE_RATE, NOON,
+                A_FEW_HOURS, false, SyncScheduler.NETWORK_UNMETERED);
+        assertEquals(SyncScheduler.BASE_INTERVAL, schedule.interval);
+        assertEquals(0, schedule.reasons);
+        assertEquals(SyncScheduler.BASE_INTERVAL / 3, schedule.getFlex());
+    }
+
+    public void testVolatileWatchedForecastSyncsMoreOften() {
+        SyncScheduler.Schedule schedule = SyncScheduler.computeSchedule(0.8, NOON,
+                HOUR_IN_MILLIS / 2, true, SyncScheduler.NETWORK_UNMETERED);
+        assertEquals(SyncScheduler.MIN_INTERVAL, schedule.interval);
+        assertEquals(SyncScheduler.REASON_VOLATILE | SyncScheduler.REASON_VISIBLE
+                | SyncScheduler.REASON_CHARGING, schedule.reasons);
+    }
+
+    public void testQuietNightSyncsLessOften() {
+        SyncScheduler.Schedule schedule = SyncScheduler.computeSchedule(0, 2,
+                Long.MAX_VALUE, false, SyncScheduler.NETWORK_METERED);
+        assertEquals(SyncScheduler.MAX_INTERVAL, schedule.interval);
+        assertEquals(SyncScheduler.REASON_STABLE | SyncScheduler.REASON_NIGHT
+                | SyncScheduler.REASON_UNSEEN | SyncScheduler.REASON_METERED, schedule.reasons);
+    }
+
+    /*
+        Periods always land on a step within the bounds, so a small change in the inputs leaves
+        the periodic sync alone.
+     */
+    public void testPeriodsAreBoundedAndRounded() {
+        int[] networks = {SyncScheduler.NETWORK_NONE, SyncScheduler.NETWORK_METERED,
+                SyncScheduler.NETWORK_UNMETERED};
+        double[] changeRates = {0, 0.3, 0.8};
+        long[] sinceVisible = {0, A_FEW_HOURS, Long.MAX_VALUE};
+        for (int hour = 0; hour < 24; hour++) {
+            for (double changeRate : changeRates) {
+                for (long since : sinceVisible) {
+                    for (int network : networks) {
+                        for (boolean charging : new boolean[]{false, true}) {
+                            SyncScheduler.Schedule schedule = SyncScheduler.computeSchedule(
+                                    changeRate, hour, since, charging, network);
+                            assertTrue(schedule.interval >= SyncScheduler.MIN_INTERVAL);
+                            assertTrue(schedule.interval <= SyncScheduler.MAX_INTERVAL);
+                            assertEquals(0, schedule.interval % SyncScheduler.INTERVAL_STEP);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+        Every sync is recorded with the schedule it ran under.
+     */
+    public void testSyncsAreRecorded() {
+        int before = SyncScheduler.getHistory(mContext).size();
+        SyncScheduler.onSyncComplete(mContext, true, 14, 3);
+        List<SyncScheduler.SyncRecord> history = SyncScheduler.getHistory(mContext);
+        assertTrue(history.size() == before + 1 || history.size() == 100);
+
+        SyncScheduler.SyncRecord record = history.get(history.size() - 1);
+        assertTrue(record.isSucceeded());
+        assertEquals(14, record.getReceived());
+        assertEquals(3, record.getChanged());
+        assertTrue(record.getInterval() >= SyncScheduler.MIN_INTERVAL);
+    }
+}
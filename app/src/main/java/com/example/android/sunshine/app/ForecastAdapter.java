@@ -27,11 +27,13 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.data.ForecastPager;
 import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link Cursor} to a {@link RecyclerView}.
+ * from a {@link Cursor} to a {@link RecyclerView}.  The cursor is the first page of the
+ * forecast, the {@link ForecastPager} reads the others as the list is scrolled to them.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -42,6 +44,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    final private ForecastPager mPager;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -70,9 +73,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            Cursor cursor = mPager.moveToPosition(adapterPosition);
+            if (cursor == null) {
+                // Its page is still being read
+                return;
+            }
+            int dateColumnIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+            mClickHandler.onClick(cursor.getLong(dateColumnIndex), this);
             mICM.onClick(this);
         }
     }
@@ -87,6 +94,17 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mPager = new ForecastPager(context.getContentResolver(), ForecastFragment.FORECAST_COLUMNS,
+                new ForecastPager.Callback() {
+                    @Override
+                    public void onPageLoaded(int positionStart, int itemCount, boolean added) {
+                        if (added) {
+                            notifyItemRangeInserted(positionStart, itemCount);
+                        } else {
+                            notifyItemRangeChanged(positionStart, itemCount);
+                        }
+                    }
+                });
     }
 
     /*
@@ -121,8 +139,19 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Binding a position reads the pages around it
+        Cursor cursor = mPager.moveToPosition(position);
+        if (cursor == null) {
+            // Left blank until its page has been read
+            forecastAdapterViewHolder.mIconView.setImageDrawable(null);
+            forecastAdapterViewHolder.mDateView.setText(null);
+            forecastAdapterViewHolder.mDescriptionView.setText(null);
+            forecastAdapterViewHolder.mHighTempView.setText(null);
+            forecastAdapterViewHolder.mLowTempView.setText(null);
+            mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
+        }
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
         boolean useLongToday;
 
@@ -150,11 +179,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // the animator can use this to re-find the original view
         ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
 
+        // One snapshot of the user's units and formats for the whole row
+        FormatContext format = FormatContext.get(mContext);
+
         // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
 
         // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(format.getFriendlyDayString(dateInMillis, useLongToday));
 
         // Read weather forecast from cursor
         String description = Utility.getStringForWeatherCondition(mContext, weatherId);
@@ -168,14 +200,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // is not individually selectable
 
         // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
+        double high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        String highString = format.formatTemperature(high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
         // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
+        double low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        String lowString = format.formatTemperature(low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
 
@@ -205,16 +237,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mPager.getCount();
     }
 
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
+        // The other pages are read again from the new first one
+        mPager.reset(Utility.getPreferredLocation(mContext), newCursor);
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * @return the first page of the forecast
+     */
     public Cursor getCursor() {
         return mCursor;
     }
@@ -45,6 +45,7 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.ForecastPager;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
@@ -65,7 +66,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -307,14 +308,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // fragment only uses one loader, so we don't care about checking the id.
 
         // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
+        // dates after or including today.  The loader only reads the first page, the adapter
+        // reads the others as the list gets to them.
 
         // Sort order:  Ascending, by date.
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
+        Uri weatherForLocationUri = ForecastPager.buildFirstPageUri(locationSetting);
 
         return new CursorLoader(getActivity(),
                 weatherForLocationUri,
@@ -341,6 +342,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
+                            // The date comes from the detail screen or a notification, it is
+                            // in the first page of the forecast
                             Cursor data = mForecastAdapter.getCursor();
                             int count = data.getCount();
                             int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
@@ -413,6 +416,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     case SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN:
                         message = R.string.empty_forecast_list_server_down;
                         break;
+                    case SunshineSyncAdapter.LOCATION_STATUS_SERVER_BACKOFF:
+                        message = R.string.empty_forecast_list_server_backoff;
+                        break;
                     case SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID:
                         message = R.string.empty_forecast_list_server_error;
                         break;
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats temperatures, wind and days the way the user wants them, for the list, the detail,
+ * the widgets and the notification alike.  It is a snapshot of the units preference, the
+ * locale and the format strings, so formatting reads no preferences and no resources.  A new
+ * snapshot is taken when the units change, which a preference listener reports, or when the
+ * locale or the time zone does.
+ *
+ * The temperatures are whole degrees, so each one is formatted once and kept, and so are the
+ * days, by their epoch day, see {@link EpochDays}.
+ */
+public final class FormatContext {
+
+    // The degrees whose text is kept, in both units, which covers any weather
+    private static final int MIN_KEPT_DEGREES = -150;
+    private static final int MAX_KEPT_DEGREES = 150;
+
+    private static final PreferenceSnapshot<FormatContext> sSnapshot =
+            new PreferenceSnapshot<FormatContext>(R.string.pref_units_key) {
+                @Override
+                protected FormatContext build(Context context, SharedPreferences prefs) {
+                    String metricUnits = context.getString(R.string.pref_units_metric);
+                    boolean metric = prefs.getString(context.getString(R.string.pref_units_key),
+                            metricUnits).equals(metricUnits);
+                    return new FormatContext(context, metric, Locale.getDefault(),
+                            TimeZone.getDefault());
+                }
+            };
+
+    private final boolean mMetric;
+    private final Locale mLocale;
+    // Of the days, and which the date formats were made for
+    private final TimeZone mZone;
+    private final String mTemperatureFormat;
+    private final String mWindFormat;
+    private final String mFullFriendlyDateFormat;
+    private final String mToday;
+    private final String mTomorrow;
+    // Not thread safe, so used under its own lock
+    private final SimpleDateFormat mDayNameFormat;
+    // The names of the days of the week from Monday, filled as they are met
+    private final String[] mDayNames = new String[7];
+    private final DayCache mMonthDays;
+    private final DayCache mShortDates;
+    // The text of each whole degree from MIN_KEPT_DEGREES up, filled as they are met
+    private final String[] mTemperatures = new String[MAX_KEPT_DEGREES - MIN_KEPT_DEGREES + 1];
+    private String mNegativeZero;
+
+    private FormatContext(Context context, boolean metric, Locale locale, TimeZone timeZone) {
+        mMetric = metric;
+        mLocale = locale;
+        mZone = timeZone;
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWindFormat = context.getString(metric ? R.string.format_wind_kmh
+                : R.string.format_wind_mph);
+        mFullFriendlyDateFormat = context.getString(R.string.format_full_friendly_date);
+        mToday = context.getString(R.string.today);
+        mTomorrow = context.getString(R.string.tomorrow);
+        mDayNameFormat = newDateFormat("EEEE", locale, timeZone);
+        mMonthDays = new DayCache(newDateFormat("MMMM dd", locale, timeZone), timeZone);
+        mShortDates = new DayCache(newDateFormat("EEE MMM dd", locale, timeZone), timeZone);
+    }
+
+    private static SimpleDateFormat newDateFormat(String pattern, Locale locale,
+                                                  TimeZone timeZone) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+        format.setTimeZone(timeZone);
+        return format;
+    }
+
+    /**
+     * @return the current snapshot, taken again if the units, the locale or the time zone
+     * changed
+     */
+    public static FormatContext get(Context context) {
+        FormatContext current = sSnapshot.get(context);
+        if (!current.mLocale.equals(Locale.getDefault())
+                || !current.mZone.getID().equals(TimeZone.getDefault().getID())) {
+            sSnapshot.invalidate();
+            current = sSnapshot.get(context);
+        }
+        return current;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @param temperature in Celsius, as stored
+     * @return the temperature in the user's units, in whole degrees
+     */
+    public String formatTemperature(double temperature) {
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        if (!mMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        // For presentation, assume the user doesn't care about tenths of a degree.  Rounds
+        // half away from zero, as the format does.
+        long degrees = temperature < 0 ? -Math.round(-temperature) : Math.round(temperature);
+        if (degrees == 0 && Math.copySign(1.0, temperature) < 0) {
+            // The format shows the sign of what rounds to zero from below, "-0°"
+            if (mNegativeZero == null) {
+                mNegativeZero = String.format(mLocale, mTemperatureFormat, -0.0);
+            }
+            return mNegativeZero;
+        }
+        if (degrees < MIN_KEPT_DEGREES || degrees > MAX_KEPT_DEGREES) {
+            return String.format(mLocale, mTemperatureFormat, (double) degrees);
+        }
+        int index = (int) degrees - MIN_KEPT_DEGREES;
+        String text = mTemperatures[index];
+        if (text == null) {
+            // Strings are immutable, a thread seeing null only formats it again
+            text = String.format(mLocale, mTemperatureFormat, (double) degrees);
+            mTemperatures[index] = text;
+        }
+        return text;
+    }
+
+    /**
+     * @param windSpeed in km/h, as stored
+     * @param degrees the meteorological direction the wind comes from
+     * @return the speed in the user's units, and the compass direction
+     */
+    public String formatWind(float windSpeed, float degrees) {
+        if (!mMetric) {
+            windSpeed = .621371192237334f * windSpeed;
+        }
+
+        // From wind direction in degrees, determine compass direction as a string (e.g NW)
+        // You know what's fun, writing really long if/else statements with tons of possible
+        // conditions.  Seriously, try it!
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return String.format(mLocale, mWindFormat, windSpeed, direction);
+    }
+
+    /**
+     * The day for the forecast list: "Today, June 8" for today if displayLongToday, "Tomorrow",
+     * the day name for the rest of the week, and "Mon Jun 8" after that.
+     */
+    public String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int day = EpochDays.fromMillis(dateInMillis, mZone);
+        int today = EpochDays.fromMillis(System.currentTimeMillis(), mZone);
+
+        if (displayLongToday && day == today) {
+            return String.format(mLocale, mFullFriendlyDateFormat, mToday, mMonthDays.get(day));
+        } else if ( day < today + 7 ) {
+            // If the input date is less than a week in the future, just return the day name.
+            return getDayName(day, today);
+        } else {
+            return mShortDates.get(day);
+        }
+    }
+
+    /**
+     * @return the day for the detail, e.g. "Wednesday, June 24"
+     */
+    public String getFullFriendlyDayString(long dateInMillis) {
+        int day = EpochDays.fromMillis(dateInMillis, mZone);
+        return String.format(mLocale, mFullFriendlyDateFormat, getWeekDayName(day),
+                mMonthDays.get(day));
+    }
+
+    /**
+     * @return "Today", "Tomorrow" or the name of the day, e.g. "Wednesday"
+     */
+    public String getDayName(long dateInMillis) {
+        return getDayName(EpochDays.fromMillis(dateInMillis, mZone),
+                EpochDays.fromMillis(System.currentTimeMillis(), mZone));
+    }
+
+    private String getDayName(int day, int today) {
+        if (day == today) {
+            return mToday;
+        } else if ( day == today +1 ) {
+            return mTomorrow;
+        }
+        return getWeekDayName(day);
+    }
+
+    /**
+     * @return the day in the form "December 06"
+     */
+    public String getFormattedMonthDay(long dateInMillis) {
+        return mMonthDays.get(EpochDays.fromMillis(dateInMillis, mZone));
+    }
+
+    private String getWeekDayName(int day) {
+        int dayOfWeek = EpochDays.getDayOfWeek(day);
+        String name = mDayNames[dayOfWeek];
+        if (name == null) {
+            synchronized (mDayNameFormat) {
+                name = mDayNameFormat.format(EpochDays.toMillis(day, mZone));
+            }
+            mDayNames[dayOfWeek] = name;
+        }
+        return name;
+    }
+
+    /*
+        The text of the days formatted lately, by epoch day.  A day shares its slot with the
+        days 64 days apart from it, which a forecast doesn't reach.
+     */
+    private static final class DayCache {
+        private static final int SIZE = 64;
+
+        private final SimpleDateFormat mFormat;
+        private final TimeZone mZone;
+        private final Entry[] mEntries = new Entry[SIZE];
+
+        DayCache(SimpleDateFormat format, TimeZone zone) {
+            mFormat = format;
+            mZone = zone;
+        }
+
+        String get(int day) {
+            int slot = day & (SIZE - 1);
+            Entry entry = mEntries[slot];
+            if (entry == null || entry.day != day) {
+                String text;
+                synchronized (mFormat) {
+                    text = mFormat.format(EpochDays.toMillis(day, mZone));
+                }
+                // Immutable, so another thread sees it whole or not at all
+                entry = new Entry(day, text);
+                mEntries[slot] = entry;
+            }
+            return entry.text;
+        }
+
+        private static final class Entry {
+            final int day;
+            final String text;
+
+            Entry(int day, String text) {
+                this.day = day;
+                this.text = text;
+            }
+        }
+    }
+}
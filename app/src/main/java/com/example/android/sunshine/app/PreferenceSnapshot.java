@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * A value built from some preferences and kept until one of them changes, which a preference
+ * listener reports, or until it is invalidated.  Reading it takes no lock once it is built.
+ *
+ * Every invalidation moves the generation on, and a value is only kept if no invalidation came
+ * while it was being built: a thread still reading the old preferences can't put back what was
+ * just invalidated.  It hands its value to its caller all the same.
+ *
+ * The preferences only hold their listeners weakly, so a snapshot must itself be held for as
+ * long as it should listen, e.g. in a static field.
+ */
+abstract class PreferenceSnapshot<T> {
+
+    private final int[] mKeyIds;
+    private volatile T mValue;
+    // Guarded by this
+    private int mGeneration;
+    private SharedPreferences.OnSharedPreferenceChangeListener mListener;
+
+    /**
+     * @param keyIds string resource ids of the keys of the preferences the value is built from
+     */
+    PreferenceSnapshot(int... keyIds) {
+        mKeyIds = keyIds;
+    }
+
+    /**
+     * Builds the value from the current preferences.  Called without a lock, it may run on
+     * several threads at once.
+     */
+    protected abstract T build(Context context, SharedPreferences prefs);
+
+    T get(Context context) {
+        T value = mValue;
+        if (value != null) {
+            return value;
+        }
+        context = context.getApplicationContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        int generation;
+        synchronized (this) {
+            if (mListener == null) {
+                mListener = newListener(context);
+                prefs.registerOnSharedPreferenceChangeListener(mListener);
+            }
+            generation = mGeneration;
+        }
+        value = build(context, prefs);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mValue = value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the value, the next read builds it again.
+     */
+    synchronized void invalidate() {
+        mGeneration++;
+        mValue = null;
+    }
+
+    private SharedPreferences.OnSharedPreferenceChangeListener newListener(Context context) {
+        final String[] keys = new String[mKeyIds.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = context.getString(mKeyIds[i]);
+        }
+        return new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences prefs, String changedKey) {
+                for (String key : keys) {
+                    if (key.equals(changedKey)) {
+                        invalidate();
+                        return;
+                    }
+                }
+            }
+        };
+    }
+}
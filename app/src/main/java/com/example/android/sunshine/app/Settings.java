@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * The settings the app reads on every bind and every sync, loaded once per process: the
+ * preferred location, whether all locations are synced, the notification flags and the
+ * location status.  It is an immutable snapshot, so reading it takes no preference lookup and
+ * no resource.  A new snapshot is taken when one of them changes, which a preference listener
+ * reports, or when they are written through here.
+ *
+ * The writes are applied, so they don't wait on the disk; {@link #persist(Context)} is where
+ * the values a later process relies on are made to reach it.  The units and the art pack are
+ * read through {@link FormatContext} and {@link WeatherConditions}.
+ */
+public final class Settings {
+
+    private static final PreferenceSnapshot<Settings> sSnapshot =
+            new PreferenceSnapshot<Settings>(R.string.pref_location_key,
+                    R.string.pref_sync_all_locations_key, R.string.pref_enable_notifications_key,
+                    R.string.pref_last_notification, R.string.pref_location_status_key) {
+                @Override
+                protected Settings build(Context context, SharedPreferences prefs) {
+                    return new Settings(context, prefs);
+                }
+            };
+
+    private final String mLocationSetting;
+    private final boolean mSyncingAllLocations;
+    private final boolean mNotificationsEnabled;
+    private final long mLastNotification;
+    private final int mLocationStatus;
+
+    private Settings(Context context, SharedPreferences prefs) {
+        mLocationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        mSyncingAllLocations = prefs.getBoolean(
+                context.getString(R.string.pref_sync_all_locations_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_sync_all_locations_default)));
+        mNotificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        mLastNotification = prefs.getLong(context.getString(R.string.pref_last_notification), 0);
+        mLocationStatus = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+    }
+
+    /**
+     * @return the current snapshot, taken again if a setting changed
+     */
+    public static Settings get(Context context) {
+        return sSnapshot.get(context);
+    }
+
+    /**
+     * Drops the snapshot.  The preference listeners run in no particular order, so a listener
+     * that reads the settings calls this first.
+     */
+    public static void invalidate() {
+        sSnapshot.invalidate();
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public boolean isSyncingAllLocations() {
+        return mSyncingAllLocations;
+    }
+
+    public boolean areNotificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+
+    /**
+     * @return when the last weather notification was shown, 0 if never
+     */
+    public long getLastNotification() {
+        return mLastNotification;
+    }
+
+    @SuppressWarnings("ResourceType")
+    public @SunshineSyncAdapter.LocationStatus int getLocationStatus() {
+        return mLocationStatus;
+    }
+
+    public static void setLocationStatus(Context context,
+                                         @SunshineSyncAdapter.LocationStatus int locationStatus) {
+        getPreferences(context).edit()
+                .putInt(context.getString(R.string.pref_location_status_key), locationStatus)
+                .apply();
+        // The listener only hears of it later, on the main thread
+        sSnapshot.invalidate();
+    }
+
+    public static void setLastNotification(Context context, long lastNotification) {
+        getPreferences(context).edit()
+                .putLong(context.getString(R.string.pref_last_notification), lastNotification)
+                .apply();
+        sSnapshot.invalidate();
+    }
+
+    /**
+     * Waits for the writes applied so far to reach the disk: without the time of the last
+     * notification, a new process would notify again the same day.  An empty commit is queued
+     * behind them.  Not to be called from the UI thread.
+     *
+     * @return whether the preferences could be written
+     */
+    public static boolean persist(Context context) {
+        return getPreferences(context).edit().commit();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context);
+    }
+}
@@ -18,15 +18,20 @@ package com.example.android.sunshine.app;
 import android.annotation.TargetApi;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
+import android.preference.PreferenceScreen;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncMetrics;
+
+import java.util.List;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
@@ -50,6 +55,83 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
+
+        // Sync telemetry and the slow query log are for developers only
+        if (BuildConfig.DEBUG) {
+            addPreferencesFromResource(R.xml.pref_debug);
+            loadSyncTelemetry();
+            bindSlowQueryExport();
+        }
+    }
+
+    /**
+     * Shares the slow query log of the provider as text when its preference is clicked.  The
+     * log is read through ContentResolver.call(), which needs Honeycomb.
+     */
+    private void bindSlowQueryExport() {
+        Preference export = findPreference(getString(R.string.pref_slow_queries_key));
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            getPreferenceScreen().removePreference(export);
+            return;
+        }
+        export.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                exportSlowQueries();
+                return true;
+            }
+        });
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void exportSlowQueries() {
+        Bundle result = getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.METHOD_GET_SLOW_QUERIES, null, null);
+        String log = result == null ? null
+                : result.getString(WeatherContract.WeatherEntry.SLOW_QUERIES);
+        if (log == null || log.isEmpty()) {
+            log = getString(R.string.pref_slow_queries_empty);
+        }
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("text/plain");
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.pref_slow_queries_label));
+        shareIntent.putExtra(Intent.EXTRA_TEXT, log);
+        startActivity(Intent.createChooser(shareIntent,
+                getString(R.string.pref_slow_queries_label)));
+    }
+
+    /**
+     * Fills the sync telemetry screen with the p50 and p95 durations of each phase of the
+     * recent syncs.
+     */
+    private void loadSyncTelemetry() {
+        final PreferenceScreen telemetryScreen =
+                (PreferenceScreen) findPreference(getString(R.string.pref_sync_telemetry_key));
+        new AsyncTask<Void, Void, List<SyncMetrics.PhaseSummary>>() {
+            @Override
+            protected List<SyncMetrics.PhaseSummary> doInBackground(Void... params) {
+                return SyncMetrics.summarize(SettingsActivity.this);
+            }
+
+            @Override
+            protected void onPostExecute(List<SyncMetrics.PhaseSummary> summaries) {
+                telemetryScreen.removeAll();
+                if (summaries.isEmpty()) {
+                    Preference empty = new Preference(SettingsActivity.this);
+                    empty.setTitle(R.string.pref_sync_telemetry_empty);
+                    empty.setSelectable(false);
+                    telemetryScreen.addPreference(empty);
+                }
+                for (SyncMetrics.PhaseSummary summary : summaries) {
+                    Preference phase = new Preference(SettingsActivity.this);
+                    phase.setTitle(summary.getPhase());
+                    phase.setSummary(getString(R.string.format_sync_telemetry_phase,
+                            summary.getP50Millis(), summary.getP95Millis(), summary.getCount()));
+                    phase.setSelectable(false);
+                    telemetryScreen.addPreference(phase);
+                }
+            }
+        }.execute();
     }
 
     // Registers a shared preference change listener that gets notified when preferences change
@@ -131,11 +213,14 @@ public class SettingsActivity extends PreferenceActivity
     // start our synchronization here
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // The settings may not have heard of the change yet
+        Settings.invalidate();
         if ( key.equals(getString(R.string.pref_location_key)) ) {
             // we've changed the location
             // first clear locationStatus
             Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
+            // a sync of the old location would only be wasted work
+            SunshineSyncAdapter.restartSync(this);
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
@@ -143,6 +228,11 @@ public class SettingsActivity extends PreferenceActivity
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
+        } else if ( key.equals(getString(R.string.pref_sync_all_locations_key)) ) {
+            // the set of locations to keep up to date has changed, fetch them now
+            if ( Utility.isSyncingAllLocations(this) ) {
+                SunshineSyncAdapter.syncImmediately(this);
+            }
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What Sunshine shows for each OpenWeatherMap condition id: the icon, the art, the name of the
+ * art in the art packs and the description.  The ids run from 200 to 962, so they index plain
+ * arrays built once, and a lookup is a bounds check and a read.  The art urls of the current art
+ * pack are built once per pack too, and dropped when the pack changes.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+
+    static final int FIRST_ID = 200;
+    static final int LAST_ID = 962;
+
+    private static final int[] sIcons = new int[LAST_ID - FIRST_ID + 1];
+    private static final int[] sArt = new int[LAST_ID - FIRST_ID + 1];
+    private static final String[] sArtNames = new String[LAST_ID - FIRST_ID + 1];
+    private static final int[] sStrings = new int[LAST_ID - FIRST_ID + 1];
+
+    static {
+        putArt(200, 232, R.drawable.ic_storm, R.drawable.art_storm, "storm");
+        putArt(300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain, "light_rain");
+        putArt(500, 504, R.drawable.ic_rain, R.drawable.art_rain, "rain");
+        putArt(511, 511, R.drawable.ic_snow, R.drawable.art_snow, "snow");
+        putArt(520, 531, R.drawable.ic_rain, R.drawable.art_rain, "rain");
+        putArt(600, 622, R.drawable.ic_snow, R.drawable.art_snow, "snow");
+        // 761, dust, is shown as fog
+        putArt(701, 761, R.drawable.ic_fog, R.drawable.art_fog, "fog");
+        putArt(781, 781, R.drawable.ic_storm, R.drawable.art_storm, "storm");
+        putArt(800, 800, R.drawable.ic_clear, R.drawable.art_clear, "clear");
+        putArt(801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds, "light_clouds");
+        putArt(802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds, "clouds");
+
+        putString(200, 232, R.string.condition_2xx);
+        putString(300, 321, R.string.condition_3xx);
+        putString(500, R.string.condition_500);
+        putString(501, R.string.condition_501);
+        putString(502, R.string.condition_502);
+        putString(503, R.string.condition_503);
+        putString(504, R.string.condition_504);
+        putString(511, R.string.condition_511);
+        putString(520, R.string.condition_520);
+        putString(531, R.string.condition_531);
+        putString(600, R.string.condition_600);
+        putString(601, R.string.condition_601);
+        putString(602, R.string.condition_602);
+        putString(611, R.string.condition_611);
+        putString(612, R.string.condition_612);
+        putString(615, R.string.condition_615);
+        putString(616, R.string.condition_616);
+        putString(620, R.string.condition_620);
+        putString(621, R.string.condition_621);
+        putString(622, R.string.condition_622);
+        putString(701, R.string.condition_701);
+        putString(711, R.string.condition_711);
+        putString(721, R.string.condition_721);
+        putString(731, R.string.condition_731);
+        putString(741, R.string.condition_741);
+        putString(751, R.string.condition_751);
+        putString(761, R.string.condition_761);
+        putString(762, R.string.condition_762);
+        putString(771, R.string.condition_771);
+        putString(781, R.string.condition_781);
+        putString(800, R.string.condition_800);
+        putString(801, R.string.condition_801);
+        putString(802, R.string.condition_802);
+        putString(803, R.string.condition_803);
+        putString(804, R.string.condition_804);
+        putString(900, R.string.condition_900);
+        putString(901, R.string.condition_901);
+        putString(902, R.string.condition_902);
+        putString(903, R.string.condition_903);
+        putString(904, R.string.condition_904);
+        putString(905, R.string.condition_905);
+        putString(906, R.string.condition_906);
+        putString(951, R.string.condition_951);
+        putString(952, R.string.condition_952);
+        putString(953, R.string.condition_953);
+        putString(954, R.string.condition_954);
+        putString(955, R.string.condition_955);
+        putString(956, R.string.condition_956);
+        putString(957, R.string.condition_957);
+        putString(958, R.string.condition_958);
+        putString(959, R.string.condition_959);
+        putString(960, R.string.condition_960);
+        putString(961, R.string.condition_961);
+        putString(962, R.string.condition_962);
+    }
+
+    // The art pack in use, built again once it changes
+    private static final PreferenceSnapshot<ArtPack> sArtPack =
+            new PreferenceSnapshot<ArtPack>(R.string.pref_art_pack_key) {
+                @Override
+                protected ArtPack build(Context context, SharedPreferences prefs) {
+                    String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+                    String format = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                            sunshineArtPack);
+                    return new ArtPack(format, format.equals(sunshineArtPack));
+                }
+            };
+
+    private WeatherConditions() {
+    }
+
+    private static void putArt(int firstId, int lastId, int icon, int art, String artName) {
+        for (int i = firstId - FIRST_ID; i <= lastId - FIRST_ID; i++) {
+            sIcons[i] = icon;
+            sArt[i] = art;
+            sArtNames[i] = artName;
+        }
+    }
+
+    private static void putString(int firstId, int lastId, int stringId) {
+        for (int i = firstId - FIRST_ID; i <= lastId - FIRST_ID; i++) {
+            sStrings[i] = stringId;
+        }
+    }
+
+    private static void putString(int weatherId, int stringId) {
+        putString(weatherId, weatherId, stringId);
+    }
+
+    private static boolean isKnown(int weatherId) {
+        return weatherId >= FIRST_ID && weatherId <= LAST_ID;
+    }
+
+    /**
+     * @return the icon resource id of the condition, -1 if it has none
+     */
+    static int getIconResource(int weatherId) {
+        return isKnown(weatherId) && sIcons[weatherId - FIRST_ID] != 0
+                ? sIcons[weatherId - FIRST_ID] : -1;
+    }
+
+    /**
+     * @return the art resource id of the condition, -1 if it has none
+     */
+    static int getArtResource(int weatherId) {
+        return isKnown(weatherId) && sArt[weatherId - FIRST_ID] != 0
+                ? sArt[weatherId - FIRST_ID] : -1;
+    }
+
+    /**
+     * @return the name of the art of the condition in the art packs, null if it has none
+     */
+    static String getArtName(int weatherId) {
+        return isKnown(weatherId) ? sArtNames[weatherId - FIRST_ID] : null;
+    }
+
+    /**
+     * @return the string resource id of the description of the condition, 0 if it has none
+     */
+    static int getStringResource(int weatherId) {
+        return isKnown(weatherId) ? sStrings[weatherId - FIRST_ID] : 0;
+    }
+
+    /**
+     * @return the art url of the condition in the current art pack, null if it has no art
+     */
+    static String getArtUrl(Context context, int weatherId) {
+        if (getArtName(weatherId) == null) {
+            return null;
+        }
+        return getArtPack(context).mUrls[weatherId - FIRST_ID];
+    }
+
+    /**
+     * @return whether the current art pack is the art that comes with Sunshine
+     */
+    static boolean isUsingLocalArt(Context context) {
+        return getArtPack(context).mLocal;
+    }
+
+    private static ArtPack getArtPack(Context context) {
+        return sArtPack.get(context);
+    }
+
+    private static class ArtPack {
+        final boolean mLocal;
+        final String[] mUrls = new String[LAST_ID - FIRST_ID + 1];
+
+        ArtPack(String format, boolean local) {
+            mLocal = local;
+            // Formats each art name once, the conditions sharing it share its url
+            Map<String, String> urls = new HashMap<String, String>();
+            for (int i = 0; i < mUrls.length; i++) {
+                String artName = sArtNames[i];
+                if (artName == null) {
+                    continue;
+                }
+                String url = urls.get(artName);
+                if (url == null) {
+                    url = String.format(Locale.US, format, artName);
+                    urls.put(artName, url);
+                }
+                mUrls[i] = url;
+            }
+        }
+    }
+}
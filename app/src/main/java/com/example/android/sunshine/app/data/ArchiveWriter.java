@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.v4.os.OperationCanceledException;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Copies days of the weather table to the archive within the caller's transaction, before they
+ * are deleted.  A day is archived once: one that is already in the archive is left alone.
+ *
+ * Each day is added to the aggregates of its week and month as it is archived, through a
+ * statement that seeds the period if it is new and one that folds the day into it.  The
+ * aggregates are never recomputed from the days, so archiving costs the same however large the
+ * archive has grown.  Days and weeks past their retention are then dropped, for the locations
+ * archived to only.
+ */
+class ArchiveWriter {
+
+    // The days matching the caller's selection that aren't archived yet
+    private static final String SQL_SELECT_NEW_DAYS = "SELECT " +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES +
+            " FROM " + WeatherEntry.TABLE_NAME + " WHERE NOT EXISTS (SELECT 1 FROM " +
+            ArchiveEntry.TABLE_NAME + " WHERE " +
+            ArchiveEntry.TABLE_NAME + "." + ArchiveEntry.COLUMN_LOC_KEY + " = " +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " AND " +
+            ArchiveEntry.TABLE_NAME + "." + ArchiveEntry.COLUMN_DATE + " = " +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ") AND ";
+
+    // these indices must match the projection
+    private static final int INDEX_LOC_KEY = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_HUMIDITY = 5;
+    private static final int INDEX_PRESSURE = 6;
+    private static final int INDEX_WIND_SPEED = 7;
+    private static final int INDEX_DEGREES = 8;
+
+    private static final String SQL_INSERT_DAY = "INSERT INTO " + ArchiveEntry.TABLE_NAME + " (" +
+            ArchiveEntry.COLUMN_LOC_KEY + ", " +
+            ArchiveEntry.COLUMN_DATE + ", " +
+            ArchiveEntry.COLUMN_WEATHER_ID + ", " +
+            ArchiveEntry.COLUMN_MIN_TEMP + ", " +
+            ArchiveEntry.COLUMN_MAX_TEMP + ", " +
+            ArchiveEntry.COLUMN_HUMIDITY + ", " +
+            ArchiveEntry.COLUMN_PRESSURE + ", " +
+            ArchiveEntry.COLUMN_WIND_SPEED + ", " +
+            ArchiveEntry.COLUMN_DEGREES +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Both take the key first, then the min and max temperature, humidity and wind of the day.
+    // A new period starts with no days, at the values of the day about to be folded in.
+    private static final String SQL_SEED_PERIOD = "INSERT OR IGNORE INTO " +
+            AggregateEntry.TABLE_NAME + " (" +
+            AggregateEntry.COLUMN_LOC_KEY + ", " +
+            AggregateEntry.COLUMN_PERIOD + ", " +
+            AggregateEntry.COLUMN_PERIOD_START + ", " +
+            AggregateEntry.COLUMN_DAY_COUNT + ", " +
+            AggregateEntry.COLUMN_MIN_TEMP + ", " +
+            AggregateEntry.COLUMN_MAX_TEMP + ", " +
+            AggregateEntry.COLUMN_TEMP_SUM + ", " +
+            AggregateEntry.COLUMN_MIN_HUMIDITY + ", " +
+            AggregateEntry.COLUMN_MAX_HUMIDITY + ", " +
+            AggregateEntry.COLUMN_HUMIDITY_SUM + ", " +
+            AggregateEntry.COLUMN_MIN_WIND + ", " +
+            AggregateEntry.COLUMN_MAX_WIND + ", " +
+            AggregateEntry.COLUMN_WIND_SUM +
+            ") VALUES (?1, ?2, ?3, 0, ?4, ?5, 0, ?6, ?6, 0, ?7, ?7, 0)";
+
+    // The temperature of the day for the mean comes last
+    private static final String SQL_FOLD_DAY = "UPDATE " + AggregateEntry.TABLE_NAME + " SET " +
+            AggregateEntry.COLUMN_DAY_COUNT + " = " + AggregateEntry.COLUMN_DAY_COUNT + " + 1, " +
+            AggregateEntry.COLUMN_MIN_TEMP + " = MIN(" + AggregateEntry.COLUMN_MIN_TEMP + ", ?4), " +
+            AggregateEntry.COLUMN_MAX_TEMP + " = MAX(" + AggregateEntry.COLUMN_MAX_TEMP + ", ?5), " +
+            AggregateEntry.COLUMN_TEMP_SUM + " = " + AggregateEntry.COLUMN_TEMP_SUM + " + ?8, " +
+            AggregateEntry.COLUMN_MIN_HUMIDITY + " = MIN(" + AggregateEntry.COLUMN_MIN_HUMIDITY + ", ?6), " +
+            AggregateEntry.COLUMN_MAX_HUMIDITY + " = MAX(" + AggregateEntry.COLUMN_MAX_HUMIDITY + ", ?6), " +
+            AggregateEntry.COLUMN_HUMIDITY_SUM + " = " + AggregateEntry.COLUMN_HUMIDITY_SUM + " + ?6, " +
+            AggregateEntry.COLUMN_MIN_WIND + " = MIN(" + AggregateEntry.COLUMN_MIN_WIND + ", ?7), " +
+            AggregateEntry.COLUMN_MAX_WIND + " = MAX(" + AggregateEntry.COLUMN_MAX_WIND + ", ?7), " +
+            AggregateEntry.COLUMN_WIND_SUM + " = " + AggregateEntry.COLUMN_WIND_SUM + " + ?7" +
+            " WHERE " + AggregateEntry.COLUMN_LOC_KEY + " = ?1 AND " +
+            AggregateEntry.COLUMN_PERIOD + " = ?2 AND " +
+            AggregateEntry.COLUMN_PERIOD_START + " = ?3";
+
+    private static final String SQL_DROP_OLD_DAYS = "DELETE FROM " + ArchiveEntry.TABLE_NAME +
+            " WHERE " + ArchiveEntry.COLUMN_LOC_KEY + " = ? AND " +
+            ArchiveEntry.COLUMN_DATE + " < ?";
+
+    private static final String SQL_DROP_OLD_WEEKS = "DELETE FROM " + AggregateEntry.TABLE_NAME +
+            " WHERE " + AggregateEntry.COLUMN_LOC_KEY + " = ? AND " +
+            AggregateEntry.COLUMN_PERIOD + " = '" + WeatherContract.PATH_WEEK + "' AND " +
+            AggregateEntry.COLUMN_PERIOD_START + " < ?";
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mInsertDay;
+    private final SQLiteStatement mSeedPeriod;
+    private final SQLiteStatement mFoldDay;
+
+    ArchiveWriter(SQLiteDatabase db) {
+        mDb = db;
+        mInsertDay = db.compileStatement(SQL_INSERT_DAY);
+        mSeedPeriod = db.compileStatement(SQL_SEED_PERIOD);
+        mFoldDay = db.compileStatement(SQL_FOLD_DAY);
+    }
+
+    /**
+     * Archives the days of the weather table matching the selection, as given to delete.
+     *
+     * @return the number of days archived
+     * @throws OperationCanceledException if the thread was interrupted, the caller's
+     * transaction should then be rolled back
+     */
+    int archive(String selection, String[] selectionArgs) {
+        Cursor cursor = mDb.rawQuery(SQL_SELECT_NEW_DAYS + "(" + selection + ")", selectionArgs);
+        Set<Long> locationIds = new LinkedHashSet<Long>();
+        long lastDate = Long.MIN_VALUE;
+        int archived = 0;
+        try {
+            while (cursor.moveToNext()) {
+                // As in bulkInsert, the sync calls us on its own thread, interrupted on cancel
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new OperationCanceledException();
+                }
+                long locationId = cursor.getLong(INDEX_LOC_KEY);
+                long date = cursor.getLong(INDEX_DATE);
+                long minTemp = toFixedPoint(cursor.getDouble(INDEX_MIN_TEMP));
+                long maxTemp = toFixedPoint(cursor.getDouble(INDEX_MAX_TEMP));
+                long humidity = toFixedPoint(cursor.getDouble(INDEX_HUMIDITY));
+                long windSpeed = toFixedPoint(cursor.getDouble(INDEX_WIND_SPEED));
+
+                mInsertDay.bindLong(1, locationId);
+                mInsertDay.bindLong(2, date);
+                mInsertDay.bindLong(3, cursor.getLong(INDEX_WEATHER_ID));
+                mInsertDay.bindLong(4, minTemp);
+                mInsertDay.bindLong(5, maxTemp);
+                mInsertDay.bindLong(6, humidity);
+                mInsertDay.bindLong(7, toFixedPoint(cursor.getDouble(INDEX_PRESSURE)));
+                mInsertDay.bindLong(8, windSpeed);
+                mInsertDay.bindLong(9, toFixedPoint(cursor.getDouble(INDEX_DEGREES)));
+                mInsertDay.executeInsert();
+
+                long meanTemp = Math.round((minTemp + maxTemp) / 2.0);
+                foldDay(locationId, WeatherContract.PATH_WEEK, WeatherContract.getWeekStart(date),
+                        minTemp, maxTemp, humidity, windSpeed, meanTemp);
+                foldDay(locationId, WeatherContract.PATH_MONTH, WeatherContract.getMonthStart(date),
+                        minTemp, maxTemp, humidity, windSpeed, meanTemp);
+
+                locationIds.add(locationId);
+                lastDate = Math.max(lastDate, date);
+                archived++;
+            }
+        } finally {
+            cursor.close();
+        }
+        if (archived > 0) {
+            dropExpired(locationIds, lastDate);
+        }
+        return archived;
+    }
+
+    void close() {
+        mInsertDay.close();
+        mSeedPeriod.close();
+        mFoldDay.close();
+    }
+
+    private void foldDay(long locationId, String period, long periodStart, long minTemp,
+                         long maxTemp, long humidity, long windSpeed, long meanTemp) {
+        bindPeriod(mSeedPeriod, locationId, period, periodStart, minTemp, maxTemp, humidity,
+                windSpeed);
+        mSeedPeriod.executeInsert();
+        bindPeriod(mFoldDay, locationId, period, periodStart, minTemp, maxTemp, humidity,
+                windSpeed);
+        mFoldDay.bindLong(8, meanTemp);
+        mFoldDay.execute();
+    }
+
+    private static void bindPeriod(SQLiteStatement statement, long locationId, String period,
+                                   long periodStart, long minTemp, long maxTemp, long humidity,
+                                   long windSpeed) {
+        statement.bindLong(1, locationId);
+        statement.bindString(2, period);
+        statement.bindLong(3, periodStart);
+        statement.bindLong(4, minTemp);
+        statement.bindLong(5, maxTemp);
+        statement.bindLong(6, humidity);
+        statement.bindLong(7, windSpeed);
+    }
+
+    /*
+        Drops the days and weeks of the locations that fell out of their retention, counting
+        back from the last day archived.
+     */
+    private void dropExpired(Set<Long> locationIds, long lastDate) {
+        String dayCutoff = Long.toString(WeatherContract.normalizeDate(
+                lastDate - ArchiveEntry.RETENTION_DAYS * DateUtils.DAY_IN_MILLIS));
+        String weekCutoff = Long.toString(WeatherContract.getWeekStart(
+                lastDate - AggregateEntry.WEEK_RETENTION_DAYS * DateUtils.DAY_IN_MILLIS));
+        for (long locationId : locationIds) {
+            String location = Long.toString(locationId);
+            mDb.execSQL(SQL_DROP_OLD_DAYS, new String[]{location, dayCutoff});
+            mDb.execSQL(SQL_DROP_OLD_WEEKS, new String[]{location, weekCutoff});
+        }
+    }
+
+    static long toFixedPoint(double value) {
+        return Math.round(value * ArchiveEntry.FIXED_POINT_SCALE);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Keeps the results of the forecast queries in memory: the list, the detail screen, the
+ * widgets, the notification, the wearable and Muzei all ask for the same few rows.  A result
+ * is served as a {@link MatrixCursor} over a copy of the rows, without going to the database.
+ *
+ * The provider invalidates the cache on every write.  A query that ran while a write was
+ * under way may have read the rows from before it, so its result is only kept if the cache
+ * wasn't invalidated in the meantime.
+ */
+class ForecastCache {
+
+    // A forecast is two weeks, a longer result is a history scan that isn't worth keeping
+    static final int MAX_ROWS = 100;
+
+    private final LruCache<String, Result> mResults;
+    private final LruCache<String, TodaySnapshot> mSnapshots;
+    private long mGeneration;
+    private int mHits;
+    private int mMisses;
+
+    ForecastCache(int maxResults) {
+        mResults = new LruCache<String, Result>(maxResults);
+        mSnapshots = new LruCache<String, TodaySnapshot>(maxResults);
+    }
+
+    static String getKey(Uri uri, String[] projection, String sortOrder) {
+        return uri + "|" + Arrays.toString(projection) + "|" + sortOrder;
+    }
+
+    /**
+     * @return the cached result, or null if there is none
+     */
+    Cursor get(String key) {
+        Result result = mResults.get(key);
+        synchronized (this) {
+            if (result == null) {
+                mMisses++;
+                return null;
+            }
+            mHits++;
+        }
+        return result.newCursor();
+    }
+
+    static String getSnapshotKey(String locationSetting, long date) {
+        return locationSetting + "|" + date;
+    }
+
+    /**
+     * @return the cached snapshot, or null if there is none
+     */
+    TodaySnapshot getSnapshot(String key) {
+        TodaySnapshot snapshot = mSnapshots.get(key);
+        synchronized (this) {
+            if (snapshot == null) {
+                mMisses++;
+            } else {
+                mHits++;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Keeps a snapshot, unless the cache was invalidated since it was read.
+     */
+    synchronized void putSnapshot(String key, long generation, TodaySnapshot snapshot) {
+        if (generation == mGeneration) {
+            mSnapshots.put(key, snapshot);
+        }
+    }
+
+    /**
+     * @return the generation to give {@link #put(String, long, Cursor)}, read before running the
+     * query
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Keeps the result of a query, unless the cache was invalidated since it started.
+     *
+     * @return the cursor to hand back in place of the given one, which it might close
+     */
+    Cursor put(String key, long generation, Cursor cursor) {
+        // Before Honeycomb a cursor can't tell the type of a value, so it can't be copied
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+                || cursor.getCount() > MAX_ROWS) {
+            return cursor;
+        }
+        Result result = new Result(cursor);
+        cursor.close();
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mResults.put(key, result);
+            }
+        }
+        return result.newCursor();
+    }
+
+    /**
+     * Forgets every result, for a write to the weather or location tables.
+     */
+    void invalidate() {
+        synchronized (this) {
+            mGeneration++;
+        }
+        mResults.evictAll();
+        mSnapshots.evictAll();
+    }
+
+    synchronized int getHits() {
+        return mHits;
+    }
+
+    synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * The columns and rows of a query.  Never changed once read, so it can be shared between
+     * threads.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static class Result {
+        private final String[] mColumns;
+        private final Object[][] mRows;
+
+        Result(Cursor cursor) {
+            mColumns = cursor.getColumnNames();
+            mRows = new Object[cursor.getCount()][];
+            cursor.moveToPosition(-1);
+            for (int row = 0; cursor.moveToNext(); row++) {
+                Object[] values = new Object[mColumns.length];
+                for (int column = 0; column < values.length; column++) {
+                    values[column] = getValue(cursor, column);
+                }
+                mRows[row] = values;
+            }
+        }
+
+        Cursor newCursor() {
+            ResultCursor cursor = new ResultCursor(mColumns, mRows);
+            for (Object[] row : mRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        private static Object getValue(Cursor cursor, int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return cursor.getLong(column);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return cursor.getDouble(column);
+                case Cursor.FIELD_TYPE_BLOB:
+                    return cursor.getBlob(column);
+                case Cursor.FIELD_TYPE_NULL:
+                    return null;
+                default:
+                    return cursor.getString(column);
+            }
+        }
+    }
+
+    /**
+     * Reads the numbers as text the way a cursor over the database does, which MatrixCursor
+     * doesn't: 75 rather than 75.0.
+     */
+    private static class ResultCursor extends MatrixCursor {
+        private final Object[][] mRows;
+
+        ResultCursor(String[] columns, Object[][] rows) {
+            super(columns, rows.length);
+            mRows = rows;
+        }
+
+        @Override
+        public String getString(int column) {
+            String value = super.getString(column);
+            Object raw = mRows[getPosition()][column];
+            return raw instanceof Double ? formatDouble((Double) raw) : value;
+        }
+    }
+
+    /**
+     * @return the double as printf's %g prints it, which is how the database cursor turns a
+     * REAL into text
+     */
+    static String formatDouble(double value) {
+        if (value == 0) {
+            return "0";
+        } else if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // Never stored
+            return Double.toString(value);
+        }
+        BigDecimal rounded = new BigDecimal(value)
+                .round(new MathContext(6, RoundingMode.HALF_EVEN));
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        if (exponent >= -4 && exponent < 6) {
+            return rounded.stripTrailingZeros().toPlainString();
+        }
+        String mantissa = rounded.movePointLeft(exponent).stripTrailingZeros().toPlainString();
+        return mantissa + (exponent < 0 ? "e-" : "e+")
+                + (Math.abs(exponent) < 10 ? "0" : "") + Math.abs(exponent);
+    }
+}
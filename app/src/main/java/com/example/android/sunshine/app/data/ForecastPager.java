@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.AsyncQueryHandler;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Reads the forecast of a location a page at a time, for lists that may run to thousands of
+ * rows.  Each page is queried with {@link WeatherContract#buildPageUri}, from the date of the
+ * last row of the page before it, so every page costs the same to read and no cursor outgrows
+ * its window.
+ *
+ * Only the pages around the position last read are held.  The others are closed, but their
+ * sizes and last dates are kept, so the positions stay put and a page can be read again when
+ * the list comes back to it.  The pages are read on a background thread and handed to the
+ * {@link Callback}, or read on the spot by a pager made with {@link #newSynchronousPager}.
+ */
+public class ForecastPager {
+
+    public static final int PAGE_SIZE = 50;
+    // Pages held on either side of the one last read
+    private static final int PAGES_AROUND = 1;
+
+    public interface Callback {
+        /**
+         * The rows from positionStart on can now be read.  The count grew if added is true.
+         */
+        void onPageLoaded(int positionStart, int itemCount, boolean added);
+    }
+
+    private final ContentResolver mResolver;
+    private final String[] mProjection;
+    private final Callback mCallback;
+    private final QueryHandler mHandler;
+
+    private final ArrayList<Page> mPages = new ArrayList<Page>();
+    private String mLocationSetting;
+    // The date the first page starts after
+    private long mFirstAfter;
+    private boolean mComplete;
+    // Whether the page after the last one is being read
+    private boolean mReadingNext;
+    // Whether the first page belongs to the caller, who closes it
+    private boolean mFirstPageShared;
+    // Tells the pages of the current forecast from those read before the last reset
+    private int mGeneration;
+
+    /**
+     * @param projection the columns to read, which must include {@link WeatherEntry#COLUMN_DATE}
+     */
+    public ForecastPager(ContentResolver resolver, String[] projection, Callback callback) {
+        this(resolver, projection, callback, true);
+    }
+
+    private ForecastPager(ContentResolver resolver, String[] projection, Callback callback,
+                          boolean background) {
+        mResolver = resolver;
+        mProjection = projection;
+        mCallback = callback;
+        mHandler = background ? new QueryHandler(resolver) : null;
+    }
+
+    /**
+     * @return a pager that reads the pages on the calling thread, as they are asked for
+     */
+    public static ForecastPager newSynchronousPager(ContentResolver resolver,
+                                                    String[] projection) {
+        return new ForecastPager(resolver, projection, null, false);
+    }
+
+    /**
+     * @return the uri of the first page of the forecast of the location from today on
+     */
+    public static Uri buildFirstPageUri(String locationSetting) {
+        return buildPageUri(locationSetting, getFirstAfter());
+    }
+
+    private static long getFirstAfter() {
+        return WeatherContract.normalizeDate(System.currentTimeMillis()) - 1;
+    }
+
+    private static Uri buildPageUri(String locationSetting, long after) {
+        return WeatherContract.buildPageUri(WeatherEntry.buildWeatherLocation(locationSetting),
+                after, PAGE_SIZE);
+    }
+
+    /**
+     * Starts over from the first page, read from {@link #buildFirstPageUri} by the caller who
+     * keeps it, typically through a loader.  The pages read so far are dropped.
+     */
+    public void reset(String locationSetting, Cursor firstPage) {
+        clear();
+        mLocationSetting = locationSetting;
+        mFirstAfter = getFirstAfter();
+        mFirstPageShared = true;
+        addPage(firstPage, false);
+    }
+
+    /**
+     * Starts over from the first page, which it reads itself.  For a synchronous pager.
+     */
+    public void reset(String locationSetting) {
+        clear();
+        mLocationSetting = locationSetting;
+        mFirstAfter = getFirstAfter();
+        mFirstPageShared = false;
+        addPage(mResolver.query(buildPageUri(locationSetting, mFirstAfter), mProjection, null,
+                null, null), false);
+    }
+
+    /**
+     * @return the number of rows read so far, the whole forecast once {@link #isComplete()}
+     */
+    public int getCount() {
+        return mPages.isEmpty() ? 0 : mPages.get(mPages.size() - 1).getEnd();
+    }
+
+    /**
+     * @return whether the last page has been read
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Reads on to the last page, holding no more pages than usual on the way.  For a
+     * synchronous pager, which then knows its count.
+     */
+    public int readToEnd() {
+        while (!mComplete) {
+            int pages = mPages.size();
+            // Reads the page after the last one
+            moveToPosition(getCount() - 1);
+            if (mPages.size() == pages && !mComplete) {
+                // The query failed
+                break;
+            }
+        }
+        return getCount();
+    }
+
+    /**
+     * @return the cursor of the page of the position, moved to it, or null if the page isn't
+     * read yet.  The pages around it are read, those further away dropped.
+     */
+    public Cursor moveToPosition(int position) {
+        if (position < 0 || position >= getCount()) {
+            return null;
+        }
+        // Every page but the last one is full
+        int index = position / PAGE_SIZE;
+        for (int i = 0; i < mPages.size(); i++) {
+            if (Math.abs(i - index) > PAGES_AROUND) {
+                mPages.get(i).drop(i == 0 && mFirstPageShared);
+            }
+        }
+        for (int i = Math.max(0, index - PAGES_AROUND); i <= index + PAGES_AROUND; i++) {
+            if (i < mPages.size()) {
+                if (mPages.get(i).cursor == null) {
+                    readPage(i);
+                }
+            } else if (!mComplete) {
+                readPage(mPages.size());
+                break;
+            }
+        }
+        Page page = mPages.get(index);
+        if (page.cursor == null || !page.cursor.moveToPosition(position - page.start)) {
+            return null;
+        }
+        return page.cursor;
+    }
+
+    /**
+     * Closes the pages it read.  The first page, if the caller's, is left to the caller.
+     */
+    public void close() {
+        clear();
+    }
+
+    private void clear() {
+        mGeneration++;
+        if (mHandler != null) {
+            mHandler.cancelOperation(0);
+        }
+        for (int i = 0; i < mPages.size(); i++) {
+            mPages.get(i).drop(i == 0 && mFirstPageShared);
+        }
+        mPages.clear();
+        mComplete = false;
+        mReadingNext = false;
+    }
+
+    /*
+        Reads a page again, or the page after the last one.
+     */
+    private void readPage(int index) {
+        boolean next = index == mPages.size();
+        if (next ? mReadingNext : mPages.get(index).reading) {
+            return;
+        }
+        Uri uri = buildPageUri(mLocationSetting,
+                index == 0 ? mFirstAfter : mPages.get(index - 1).lastDate);
+        if (mHandler == null) {
+            onPageRead(index, mResolver.query(uri, mProjection, null, null, null));
+            return;
+        }
+        if (next) {
+            mReadingNext = true;
+        } else {
+            mPages.get(index).reading = true;
+        }
+        mHandler.startQuery(0, new int[]{mGeneration, index}, uri, mProjection, null, null,
+                null);
+    }
+
+    private void onPageRead(int index, Cursor cursor) {
+        if (index == mPages.size()) {
+            mReadingNext = false;
+            addPage(cursor, true);
+            return;
+        }
+        Page page = mPages.get(index);
+        page.reading = false;
+        if (cursor == null) {
+            return;
+        }
+        if (page.cursor != null) {
+            // Read twice
+            cursor.close();
+            return;
+        }
+        page.cursor = cursor;
+        if (mCallback != null) {
+            mCallback.onPageLoaded(page.start, page.count, false);
+        }
+    }
+
+    private void addPage(Cursor cursor, boolean notify) {
+        if (cursor == null) {
+            return;
+        }
+        int count = cursor.getCount();
+        if (count < PAGE_SIZE) {
+            mComplete = true;
+        }
+        if (count == 0) {
+            if (!mPages.isEmpty() || !mFirstPageShared) {
+                cursor.close();
+            }
+            return;
+        }
+        cursor.moveToLast();
+        Page page = new Page(getCount(), count,
+                cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)), cursor);
+        mPages.add(page);
+        if (notify && mCallback != null) {
+            mCallback.onPageLoaded(page.start, page.count, true);
+        }
+    }
+
+    private static class Page {
+        final int start;
+        final int count;
+        final long lastDate;
+        Cursor cursor;
+        // Whether the page is being read again
+        boolean reading;
+
+        Page(int start, int count, long lastDate, Cursor cursor) {
+            this.start = start;
+            this.count = count;
+            this.lastDate = lastDate;
+            this.cursor = cursor;
+        }
+
+        int getEnd() {
+            return start + count;
+        }
+
+        void drop(boolean shared) {
+            if (cursor != null && !shared) {
+                cursor.close();
+                cursor = null;
+            }
+        }
+    }
+
+    private class QueryHandler extends AsyncQueryHandler {
+        QueryHandler(ContentResolver resolver) {
+            super(resolver);
+        }
+
+        @Override
+        protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+            int[] page = (int[]) cookie;
+            if (page[0] != mGeneration) {
+                // Read before the forecast changed
+                if (cursor != null) {
+                    cursor.close();
+                }
+                return;
+            }
+            onPageRead(page[1], cursor);
+        }
+    }
+}
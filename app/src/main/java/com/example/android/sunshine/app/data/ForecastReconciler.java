@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies incoming weather rows against the rows already stored, within the caller's
+ * transaction.  Each location's stored rows are read once, the first time one of its rows comes
+ * in, so reconciling a forecast costs one query per location rather than one per day.
+ */
+class ForecastReconciler {
+
+    // Relative tolerance when comparing stored REAL values, which come back through their text
+    // representation
+    private static final double EPSILON = 1e-9;
+
+    private final SQLiteDatabase mDb;
+    private final Map<Long, Map<Long, ContentValues>> mStoredRows =
+            new HashMap<Long, Map<Long, ContentValues>>();
+    private final Map<Long, String> mLocationSettings = new HashMap<Long, String>();
+    private Uri mChangedDayUri;
+
+    ForecastReconciler(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    /**
+     * Inserts the row if its day isn't stored yet, updates the stored row in place if any
+     * value differs, and does nothing otherwise.  The date must already be normalized.
+     *
+     * @return true if the row was written, see {@link #getChangedDayUri()}
+     */
+    boolean apply(ContentValues values) {
+        Long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            // Not something we can match, let the database sort it out
+            mChangedDayUri = WeatherEntry.CONTENT_URI;
+            return mDb.insert(WeatherEntry.TABLE_NAME, null, values) != -1;
+        }
+
+        Map<Long, ContentValues> storedRows = getStoredRows(locationId);
+        ContentValues stored = storedRows.get(date);
+        if (stored == null) {
+            long _id = mDb.insert(WeatherEntry.TABLE_NAME, null, values);
+            if (_id == -1) {
+                return false;
+            }
+            stored = new ContentValues(values);
+            stored.put(WeatherEntry._ID, _id);
+            storedRows.put(date, stored);
+        } else if (differs(stored, values)) {
+            mDb.update(WeatherEntry.TABLE_NAME, values, WeatherEntry._ID + " = ?",
+                    new String[]{stored.getAsString(WeatherEntry._ID)});
+            stored.putAll(values);
+        } else {
+            return false;
+        }
+
+        String locationSetting = getLocationSetting(locationId);
+        mChangedDayUri = locationSetting == null ? WeatherEntry.CONTENT_URI
+                : WeatherEntry.buildWeatherLocationWithDate(locationSetting, date);
+        return true;
+    }
+
+    /**
+     * @return the URI to notify for the row last written by {@link #apply(ContentValues)}
+     */
+    Uri getChangedDayUri() {
+        return mChangedDayUri;
+    }
+
+    private Map<Long, ContentValues> getStoredRows(long locationId) {
+        Map<Long, ContentValues> storedRows = mStoredRows.get(locationId);
+        if (storedRows == null) {
+            storedRows = new HashMap<Long, ContentValues>();
+            Cursor cursor = mDb.query(WeatherEntry.TABLE_NAME,
+                    null,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                    new String[]{Long.toString(locationId)},
+                    null,
+                    null,
+                    null);
+            try {
+                while (cursor.moveToNext()) {
+                    ContentValues stored = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(cursor, stored);
+                    storedRows.put(stored.getAsLong(WeatherEntry.COLUMN_DATE), stored);
+                }
+            } finally {
+                cursor.close();
+            }
+            mStoredRows.put(locationId, storedRows);
+        }
+        return storedRows;
+    }
+
+    private String getLocationSetting(long locationId) {
+        if (!mLocationSettings.containsKey(locationId)) {
+            String locationSetting = null;
+            Cursor cursor = mDb.query(LocationEntry.TABLE_NAME,
+                    new String[]{LocationEntry.COLUMN_LOCATION_SETTING},
+                    LocationEntry._ID + " = ?",
+                    new String[]{Long.toString(locationId)},
+                    null,
+                    null,
+                    null);
+            try {
+                if (cursor.moveToFirst()) {
+                    locationSetting = cursor.getString(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            mLocationSettings.put(locationId, locationSetting);
+        }
+        return mLocationSettings.get(locationId);
+    }
+
+    private static boolean differs(ContentValues stored, ContentValues values) {
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            String column = entry.getKey();
+            if (WeatherEntry._ID.equals(column)) {
+                continue;
+            }
+            Object value = entry.getValue();
+            String storedValue = stored.getAsString(column);
+            if (value == null || storedValue == null) {
+                if (value != storedValue) {
+                    return true;
+                }
+            } else if (value instanceof Number) {
+                double newValue = ((Number) value).doubleValue();
+                double oldValue;
+                try {
+                    oldValue = Double.parseDouble(storedValue);
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+                if (Math.abs(newValue - oldValue) > EPSILON * Math.max(1, Math.abs(newValue))) {
+                    return true;
+                }
+            } else if (!value.toString().equals(storedValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
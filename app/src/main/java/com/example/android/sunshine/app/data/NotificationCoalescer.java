@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Gathers the change notifications of the provider so that a loader reloads once per write
+ * rather than once per row.  Changes made within a batch are held until the batch has committed
+ * and dropped if it rolled back.  Changes are then sent at most once per URI, leaving out those
+ * whose ancestor is notified anyway: observers of a URI hear of changes to the URIs below it.
+ *
+ * With a debounce window, the changes sent within the window are gathered too and go out
+ * together at its end.  The window isn't restarted by later changes, so a steady stream of
+ * writes can't hold the notifications back for good.
+ */
+class NotificationCoalescer {
+
+    private final ContentResolver mResolver;
+    private final long mDebounceMillis;
+    private final Handler mHandler;
+
+    // The changes made within the batch running on this thread
+    private final ThreadLocal<Set<Uri>> mBatch = new ThreadLocal<Set<Uri>>();
+    // The changes waiting for the end of the debounce window, guarded by itself
+    private final Set<Uri> mPending = new LinkedHashSet<Uri>();
+
+    private final Runnable mSendPending = new Runnable() {
+        @Override
+        public void run() {
+            List<Uri> pending;
+            synchronized (mPending) {
+                pending = withoutDescendants(mPending);
+                mPending.clear();
+            }
+            for (Uri uri : pending) {
+                mResolver.notifyChange(uri, null);
+            }
+        }
+    };
+
+    NotificationCoalescer(ContentResolver resolver, long debounceMillis) {
+        mResolver = resolver;
+        mDebounceMillis = debounceMillis;
+        mHandler = debounceMillis > 0 ? new Handler(Looper.getMainLooper()) : null;
+    }
+
+    /**
+     * Notifies observers of the uri, once the batch running on this thread has committed if
+     * there is one.
+     */
+    void notifyChange(Uri uri) {
+        Set<Uri> batch = mBatch.get();
+        if (batch != null) {
+            batch.add(uri);
+        } else {
+            send(Collections.singleton(uri));
+        }
+    }
+
+    /**
+     * Holds the changes made on this thread until {@link #endBatch(boolean, boolean)}.  Batches
+     * can nest, the outermost one sends the changes.
+     *
+     * @return whether this is the outermost batch, to hand back to endBatch
+     */
+    boolean beginBatch() {
+        if (mBatch.get() != null) {
+            return false;
+        }
+        mBatch.set(new LinkedHashSet<Uri>());
+        return true;
+    }
+
+    /**
+     * @param committed whether the changes of the batch were committed, or rolled back
+     */
+    void endBatch(boolean outermost, boolean committed) {
+        if (!outermost) {
+            return;
+        }
+        Set<Uri> batch = mBatch.get();
+        mBatch.remove();
+        if (committed) {
+            send(batch);
+        }
+    }
+
+    private void send(Collection<Uri> uris) {
+        if (uris.isEmpty()) {
+            return;
+        }
+        if (mHandler == null) {
+            for (Uri uri : withoutDescendants(uris)) {
+                mResolver.notifyChange(uri, null);
+            }
+            return;
+        }
+        synchronized (mPending) {
+            if (mPending.isEmpty()) {
+                mHandler.postDelayed(mSendPending, mDebounceMillis);
+            }
+            mPending.addAll(uris);
+        }
+    }
+
+    static List<Uri> withoutDescendants(Collection<Uri> uris) {
+        List<Uri> result = new ArrayList<Uri>(uris.size());
+        for (Uri uri : uris) {
+            if (!hasAncestorIn(uri, uris)) {
+                result.add(uri);
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasAncestorIn(Uri uri, Collection<Uri> uris) {
+        Uri.Builder ancestor = uri.buildUpon().path(null).query(null);
+        for (String segment : uri.getPathSegments()) {
+            if (uris.contains(ancestor.build())) {
+                return true;
+            }
+            ancestor.appendPath(segment);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.format.DateFormat;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Keeps the provider calls that took longer than a threshold, for developers to find the slow
+ * queries and the full scans.  A slow query is kept with the plan SQLite chose for it.  Only
+ * the last few are kept, in memory, and they are exported from the debug settings through
+ * {@link WeatherContract.WeatherEntry#METHOD_GET_SLOW_QUERIES}.
+ *
+ * The provider only makes one in debug builds, and every call to it sits behind
+ * BuildConfig.DEBUG, so a release build doesn't time anything.
+ */
+class SlowQueryLog {
+
+    private static final String LOG_TAG = SlowQueryLog.class.getSimpleName();
+
+    // A frame: a query slower than this would drop one if it ran on the main thread
+    static final long THRESHOLD_MILLIS = 16;
+    static final int MAX_ENTRIES = 50;
+
+    private final long mThresholdMillis;
+    private final int mMaxEntries;
+    // The oldest entry first, guarded by itself
+    private final ArrayDeque<String> mEntries = new ArrayDeque<String>();
+    // The SQL of the last query built on this thread, to explain it if it turns out slow
+    private final ThreadLocal<String> mSql = new ThreadLocal<String>();
+
+    SlowQueryLog() {
+        this(THRESHOLD_MILLIS, MAX_ENTRIES);
+    }
+
+    SlowQueryLog(long thresholdMillis, int maxEntries) {
+        mThresholdMillis = thresholdMillis;
+        mMaxEntries = maxEntries;
+    }
+
+    /**
+     * @return the time to hand to onQuery or onWrite once the call is done
+     */
+    long start() {
+        // Left by a query that failed
+        mSql.remove();
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Remembers the SQL of the query about to run on this thread.
+     */
+    void setSql(String sql) {
+        mSql.set(sql);
+    }
+
+    /**
+     * Runs the query of the cursor, which is only read when first used, and keeps it if it was
+     * slow.
+     */
+    void onQuery(SQLiteDatabase db, Uri uri, String[] projection, String selection,
+                 String[] selectionArgs, Cursor cursor, long start) {
+        String sql = mSql.get();
+        int rows = cursor.getCount();
+        long millis = SystemClock.elapsedRealtime() - start;
+        if (millis < mThresholdMillis) {
+            return;
+        }
+        StringBuilder entry = describe("query", uri, selection, selectionArgs, rows, millis);
+        entry.append("  projection: ").append(Arrays.toString(projection)).append('\n');
+        if (sql == null) {
+            // Served from the forecast cache
+            entry.append("  no plan\n");
+        } else {
+            entry.append("  sql: ").append(sql).append('\n');
+            entry.append("  plan:\n").append(explain(db, sql));
+        }
+        add(entry.toString());
+    }
+
+    /**
+     * Keeps the write if it was slow.
+     */
+    void onWrite(String operation, Uri uri, String selection, String[] selectionArgs, int rows,
+                 long start) {
+        long millis = SystemClock.elapsedRealtime() - start;
+        if (millis >= mThresholdMillis) {
+            add(describe(operation, uri, selection, selectionArgs, rows, millis).toString());
+        }
+    }
+
+    /**
+     * @return the slow calls, the oldest first, as text
+     */
+    String export() {
+        StringBuilder text = new StringBuilder();
+        synchronized (mEntries) {
+            for (String entry : mEntries) {
+                text.append(entry).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private void add(String entry) {
+        Log.w(LOG_TAG, entry);
+        synchronized (mEntries) {
+            if (mEntries.size() == mMaxEntries) {
+                mEntries.removeFirst();
+            }
+            mEntries.addLast(entry);
+        }
+    }
+
+    private static StringBuilder describe(String operation, Uri uri, String selection,
+                                          String[] selectionArgs, int rows, long millis) {
+        StringBuilder entry = new StringBuilder();
+        entry.append(DateFormat.format("yyyy-MM-dd HH:mm:ss", System.currentTimeMillis()))
+                .append(' ').append(operation).append(' ').append(uri)
+                .append(" (").append(millis).append(" ms, ").append(rows).append(" rows)\n");
+        if (selection != null) {
+            entry.append("  selection: ").append(selection)
+                    .append(' ').append(Arrays.toString(selectionArgs)).append('\n');
+        }
+        return entry;
+    }
+
+    /*
+        The plan doesn't depend on the values of the arguments, so they are left unbound.
+     */
+    private static String explain(SQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                // the last column describes the step
+                plan.append("    ").append(cursor.getString(cursor.getColumnCount() - 1))
+                        .append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
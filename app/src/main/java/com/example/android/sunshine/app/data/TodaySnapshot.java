@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * The first stored day of a location from a given date on: what the widget, Muzei, the
+ * notification and the wearable show.  The provider hands it out through
+ * {@link ContentResolver#call} with {@link WeatherEntry#METHOD_GET_TODAY} as a Bundle of a few
+ * primitives, worked out when the forecast is written, rather than through a cursor.
+ */
+public class TodaySnapshot {
+
+    // The columns of the snapshot, in the order of the INDEX_ constants
+    static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // these indices must match the projection
+    static final int INDEX_DATE = 0;
+    static final int INDEX_WEATHER_ID = 1;
+    static final int INDEX_MAX_TEMP = 2;
+    static final int INDEX_MIN_TEMP = 3;
+    static final int INDEX_SHORT_DESC = 4;
+
+    private final long mDate;
+    private final int mWeatherId;
+    private final double mMaxTemp;
+    private final double mMinTemp;
+    private final String mShortDesc;
+
+    TodaySnapshot(long date, int weatherId, double maxTemp, double minTemp, String shortDesc) {
+        mDate = date;
+        mWeatherId = weatherId;
+        mMaxTemp = maxTemp;
+        mMinTemp = minTemp;
+        mShortDesc = shortDesc;
+    }
+
+    /**
+     * Reads the snapshot of the location from the provider.  Before Honeycomb, which has no
+     * {@link ContentResolver#call}, it is read through a query instead.
+     *
+     * @param date the day to start from, usually now
+     * @return the snapshot, or null if no day is stored from that date on
+     */
+    public static TodaySnapshot query(ContentResolver resolver, String locationSetting,
+                                      long date) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle extras = new Bundle();
+            extras.putLong(WeatherEntry.COLUMN_DATE, date);
+            return fromBundle(resolver.call(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.METHOD_GET_TODAY, locationSetting, extras));
+        }
+
+        Cursor cursor = resolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting, date),
+                COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? fromCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the snapshot of the current row of a cursor over {@link #COLUMNS}
+     */
+    static TodaySnapshot fromCursor(Cursor cursor) {
+        return new TodaySnapshot(cursor.getLong(INDEX_DATE),
+                cursor.getInt(INDEX_WEATHER_ID),
+                cursor.getDouble(INDEX_MAX_TEMP),
+                cursor.getDouble(INDEX_MIN_TEMP),
+                cursor.getString(INDEX_SHORT_DESC));
+    }
+
+    static TodaySnapshot fromBundle(Bundle bundle) {
+        if (bundle == null || !bundle.containsKey(WeatherEntry.COLUMN_DATE)) {
+            return null;
+        }
+        return new TodaySnapshot(bundle.getLong(WeatherEntry.COLUMN_DATE),
+                bundle.getInt(WeatherEntry.COLUMN_WEATHER_ID),
+                bundle.getDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                bundle.getDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                bundle.getString(WeatherEntry.COLUMN_SHORT_DESC));
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLong(WeatherEntry.COLUMN_DATE, mDate);
+        bundle.putInt(WeatherEntry.COLUMN_WEATHER_ID, mWeatherId);
+        bundle.putDouble(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemp);
+        bundle.putDouble(WeatherEntry.COLUMN_MIN_TEMP, mMinTemp);
+        bundle.putString(WeatherEntry.COLUMN_SHORT_DESC, mShortDesc);
+        return bundle;
+    }
+
+    /**
+     * @return the normalized date of the day
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    /**
+     * @return whether this is the day of the given date, rather than a later one
+     */
+    public boolean isForDay(long date) {
+        return mDate == WeatherContract.normalizeDate(date);
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public double getMaxTemp() {
+        return mMaxTemp;
+    }
+
+    public double getMinTemp() {
+        return mMinTemp;
+    }
+
+    public String getShortDesc() {
+        return mShortDesc;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * Weather rows to write in one go, held column by column in primitive arrays.  The provider
+ * takes them through {@link ContentResolver#call} with
+ * {@link WeatherEntry#METHOD_INSERT_BATCH} and binds them straight to compiled statements, so a
+ * large write doesn't cost a ContentValues, a HashMap and a boxed number per value.
+ *
+ * The rows are reconciled against the stored ones exactly like those of bulkInsert.  The
+ * locations they belong to and the deletion of past days can go in the same batch, so a sync
+ * writes everything in a single transaction and observers never see half of it.  Changes are
+ * notified once the transaction has committed, once per location rather than once per day.
+ */
+public class WeatherBatch {
+
+    // The number of rows in the extras, the columns are under their column names
+    static final String EXTRA_SIZE = "size";
+    // The number of locations in the extras, the columns are under their column names
+    static final String EXTRA_LOCATION_COUNT = "location_count";
+    // The date up to which days are deleted, absent to delete nothing
+    static final String EXTRA_DELETE_UP_TO = "delete_up_to";
+    // The number of rows inserted or updated, in the result of the call
+    static final String RESULT_CHANGED = "changed";
+    // The number of past days deleted, in the result of the call
+    static final String RESULT_DELETED = "deleted";
+
+    private static final int INITIAL_CAPACITY = 16;
+    // The deleteUpTo of a batch that deletes nothing
+    static final long NO_DELETE = Long.MIN_VALUE;
+
+    int size;
+    long[] locationId;
+    long[] date;
+    double[] humidity;
+    double[] pressure;
+    double[] windSpeed;
+    double[] degrees;
+    double[] maxTemp;
+    double[] minTemp;
+    String[] shortDesc;
+    int[] weatherId;
+
+    int locationCount;
+    String[] locationSetting = new String[0];
+    String[] cityName = new String[0];
+    double[] coordLat = new double[0];
+    double[] coordLong = new double[0];
+
+    long deleteUpTo = NO_DELETE;
+    private int mDeleted;
+
+    public WeatherBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public WeatherBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        locationId = new long[capacity];
+        date = new long[capacity];
+        humidity = new double[capacity];
+        pressure = new double[capacity];
+        windSpeed = new double[capacity];
+        degrees = new double[capacity];
+        maxTemp = new double[capacity];
+        minTemp = new double[capacity];
+        shortDesc = new String[capacity];
+        weatherId = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a location to store along with the rows, unless a location with the same setting is
+     * stored already.
+     *
+     * @return the location id to give the rows of the location, which the provider replaces
+     * with the row id of the location
+     */
+    public long addLocation(String locationSetting, String cityName, double lat, double lon) {
+        int capacity = locationCount + 1;
+        this.locationSetting = Arrays.copyOf(this.locationSetting, capacity);
+        this.cityName = Arrays.copyOf(this.cityName, capacity);
+        this.coordLat = Arrays.copyOf(this.coordLat, capacity);
+        this.coordLong = Arrays.copyOf(this.coordLong, capacity);
+        this.locationSetting[locationCount] = locationSetting;
+        this.cityName[locationCount] = cityName;
+        this.coordLat[locationCount] = lat;
+        this.coordLong[locationCount] = lon;
+        // Row ids are never negative
+        return -1 - locationCount++;
+    }
+
+    /**
+     * Also deletes the days up to and including the given date, of every location, once they
+     * have been moved to the archive.
+     */
+    public void setDeleteUpTo(long date) {
+        deleteUpTo = date;
+    }
+
+    /**
+     * @return the number of days the last {@link #insert(ContentResolver)} deleted
+     */
+    public int getDeleted() {
+        return mDeleted;
+    }
+
+    /**
+     * Adds a row, growing the columns if needed.
+     *
+     * @throws IllegalArgumentException if shortDesc is null, which the table doesn't allow
+     */
+    public void add(long locationId, long date, double humidity, double pressure,
+                    double windSpeed, double degrees, double maxTemp, double minTemp,
+                    String shortDesc, int weatherId) {
+        checkShortDesc(shortDesc);
+        if (size == this.date.length) {
+            int capacity = size * 2;
+            this.locationId = Arrays.copyOf(this.locationId, capacity);
+            this.date = Arrays.copyOf(this.date, capacity);
+            this.humidity = Arrays.copyOf(this.humidity, capacity);
+            this.pressure = Arrays.copyOf(this.pressure, capacity);
+            this.windSpeed = Arrays.copyOf(this.windSpeed, capacity);
+            this.degrees = Arrays.copyOf(this.degrees, capacity);
+            this.maxTemp = Arrays.copyOf(this.maxTemp, capacity);
+            this.minTemp = Arrays.copyOf(this.minTemp, capacity);
+            this.shortDesc = Arrays.copyOf(this.shortDesc, capacity);
+            this.weatherId = Arrays.copyOf(this.weatherId, capacity);
+        }
+        this.locationId[size] = locationId;
+        this.date[size] = date;
+        this.humidity[size] = humidity;
+        this.pressure[size] = pressure;
+        this.windSpeed[size] = windSpeed;
+        this.degrees[size] = degrees;
+        this.maxTemp[size] = maxTemp;
+        this.minTemp[size] = minTemp;
+        this.shortDesc[size] = shortDesc;
+        this.weatherId[size] = weatherId;
+        size++;
+    }
+
+    /**
+     * Writes the locations and the rows, and deletes the past days, through the provider.
+     * Before Honeycomb, which has no {@link ContentResolver#call}, they go through insert,
+     * bulkInsert and delete instead, each in its own transaction.
+     *
+     * @return the number of rows inserted or updated
+     */
+    public int insert(ContentResolver resolver) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle result = resolver.call(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.METHOD_INSERT_BATCH, null, toExtras());
+            mDeleted = result == null ? 0 : result.getInt(RESULT_DELETED);
+            return result == null ? 0 : result.getInt(RESULT_CHANGED);
+        }
+
+        long[] locationIds = new long[locationCount];
+        for (int i = 0; i < locationCount; i++) {
+            // Gives back the stored location if there is one
+            locationIds[i] = ContentUris.parseId(
+                    resolver.insert(LocationEntry.CONTENT_URI, getLocationValues(i)));
+        }
+        int changed = size == 0 ? 0
+                : resolver.bulkInsert(WeatherEntry.CONTENT_URI, toContentValues(locationIds));
+        mDeleted = deleteUpTo == NO_DELETE ? 0
+                : resolver.delete(WeatherEntry.CONTENT_ARCHIVING_URI,
+                        WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(deleteUpTo)});
+        return changed;
+    }
+
+    /**
+     * @return the location id of row i, with the locations of the batch replaced by their row
+     * ids
+     */
+    long getLocationId(int i, long[] locationIds) {
+        long id = locationId[i];
+        return id < 0 ? locationIds[(int) (-1 - id)] : id;
+    }
+
+    ContentValues getLocationValues(int i) {
+        ContentValues values = new ContentValues(4);
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting[i]);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName[i]);
+        values.put(LocationEntry.COLUMN_COORD_LAT, coordLat[i]);
+        values.put(LocationEntry.COLUMN_COORD_LONG, coordLong[i]);
+        return values;
+    }
+
+    /**
+     * @return the same rows as bulkInsert takes them
+     */
+    private ContentValues[] toContentValues(long[] locationIds) {
+        ContentValues[] values = new ContentValues[size];
+        for (int i = 0; i < size; i++) {
+            ContentValues weatherValues = new ContentValues(10);
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, getLocationId(i, locationIds));
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date[i]);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, humidity[i]);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, pressure[i]);
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, windSpeed[i]);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, degrees[i]);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp[i]);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, minTemp[i]);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, shortDesc[i]);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId[i]);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    /**
+     * The arrays are handed over as they are, within the process the provider reads them
+     * without a copy.
+     */
+    Bundle toExtras() {
+        Bundle extras = new Bundle();
+        extras.putInt(EXTRA_SIZE, size);
+        extras.putLongArray(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        extras.putLongArray(WeatherEntry.COLUMN_DATE, date);
+        extras.putDoubleArray(WeatherEntry.COLUMN_HUMIDITY, humidity);
+        extras.putDoubleArray(WeatherEntry.COLUMN_PRESSURE, pressure);
+        extras.putDoubleArray(WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+        extras.putDoubleArray(WeatherEntry.COLUMN_DEGREES, degrees);
+        extras.putDoubleArray(WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
+        extras.putDoubleArray(WeatherEntry.COLUMN_MIN_TEMP, minTemp);
+        extras.putStringArray(WeatherEntry.COLUMN_SHORT_DESC, shortDesc);
+        extras.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        extras.putInt(EXTRA_LOCATION_COUNT, locationCount);
+        extras.putStringArray(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        extras.putStringArray(LocationEntry.COLUMN_CITY_NAME, cityName);
+        extras.putDoubleArray(LocationEntry.COLUMN_COORD_LAT, coordLat);
+        extras.putDoubleArray(LocationEntry.COLUMN_COORD_LONG, coordLong);
+        if (deleteUpTo != NO_DELETE) {
+            extras.putLong(EXTRA_DELETE_UP_TO, deleteUpTo);
+        }
+        return extras;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a column is missing or shorter than the size, or a
+     * description is null
+     */
+    static WeatherBatch fromExtras(Bundle extras) {
+        WeatherBatch batch = new WeatherBatch(1);
+        batch.size = extras.getInt(EXTRA_SIZE);
+        batch.locationId = checkLength(extras.getLongArray(WeatherEntry.COLUMN_LOC_KEY),
+                WeatherEntry.COLUMN_LOC_KEY, batch.size);
+        batch.date = checkLength(extras.getLongArray(WeatherEntry.COLUMN_DATE),
+                WeatherEntry.COLUMN_DATE, batch.size);
+        batch.humidity = checkLength(extras.getDoubleArray(WeatherEntry.COLUMN_HUMIDITY),
+                WeatherEntry.COLUMN_HUMIDITY, batch.size);
+        batch.pressure = checkLength(extras.getDoubleArray(WeatherEntry.COLUMN_PRESSURE),
+                WeatherEntry.COLUMN_PRESSURE, batch.size);
+        batch.windSpeed = checkLength(extras.getDoubleArray(WeatherEntry.COLUMN_WIND_SPEED),
+                WeatherEntry.COLUMN_WIND_SPEED, batch.size);
+        batch.degrees = checkLength(extras.getDoubleArray(WeatherEntry.COLUMN_DEGREES),
+                WeatherEntry.COLUMN_DEGREES, batch.size);
+        batch.maxTemp = checkLength(extras.getDoubleArray(WeatherEntry.COLUMN_MAX_TEMP),
+                WeatherEntry.COLUMN_MAX_TEMP, batch.size);
+        batch.minTemp = checkLength(extras.getDoubleArray(WeatherEntry.COLUMN_MIN_TEMP),
+                WeatherEntry.COLUMN_MIN_TEMP, batch.size);
+        batch.shortDesc = checkLength(extras.getStringArray(WeatherEntry.COLUMN_SHORT_DESC),
+                WeatherEntry.COLUMN_SHORT_DESC, batch.size);
+        for (int i = 0; i < batch.size; i++) {
+            checkShortDesc(batch.shortDesc[i]);
+        }
+        batch.weatherId = checkLength(extras.getIntArray(WeatherEntry.COLUMN_WEATHER_ID),
+                WeatherEntry.COLUMN_WEATHER_ID, batch.size);
+        batch.locationCount = extras.getInt(EXTRA_LOCATION_COUNT);
+        if (batch.locationCount > 0) {
+            batch.locationSetting = checkLength(
+                    extras.getStringArray(LocationEntry.COLUMN_LOCATION_SETTING),
+                    LocationEntry.COLUMN_LOCATION_SETTING, batch.locationCount);
+            batch.cityName = checkLength(extras.getStringArray(LocationEntry.COLUMN_CITY_NAME),
+                    LocationEntry.COLUMN_CITY_NAME, batch.locationCount);
+            batch.coordLat = checkLength(extras.getDoubleArray(LocationEntry.COLUMN_COORD_LAT),
+                    LocationEntry.COLUMN_COORD_LAT, batch.locationCount);
+            batch.coordLong = checkLength(extras.getDoubleArray(LocationEntry.COLUMN_COORD_LONG),
+                    LocationEntry.COLUMN_COORD_LONG, batch.locationCount);
+        }
+        batch.deleteUpTo = extras.getLong(EXTRA_DELETE_UP_TO, NO_DELETE);
+        return batch;
+    }
+
+    private static long[] checkLength(long[] column, String name, int size) {
+        checkLength(column == null ? -1 : column.length, name, size);
+        return column;
+    }
+
+    private static double[] checkLength(double[] column, String name, int size) {
+        checkLength(column == null ? -1 : column.length, name, size);
+        return column;
+    }
+
+    private static int[] checkLength(int[] column, String name, int size) {
+        checkLength(column == null ? -1 : column.length, name, size);
+        return column;
+    }
+
+    private static String[] checkLength(String[] column, String name, int size) {
+        checkLength(column == null ? -1 : column.length, name, size);
+        return column;
+    }
+
+    /*
+        The writer inserts new days with OR IGNORE for the unique day of a location, which
+        would also drop a day failing NOT NULL without a word, so a null is refused up front.
+     */
+    private static void checkShortDesc(String shortDesc) {
+        if (shortDesc == null) {
+            throw new IllegalArgumentException("Null value for column "
+                    + WeatherEntry.COLUMN_SHORT_DESC);
+        }
+    }
+
+    private static void checkLength(int length, String name, int size) {
+        if (length < size) {
+            throw new IllegalArgumentException("Missing values for column " + name);
+        }
+    }
+}
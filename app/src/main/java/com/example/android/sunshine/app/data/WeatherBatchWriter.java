@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.support.v4.os.OperationCanceledException;
+
+import com.example.android.sunshine.app.EpochDays;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Writes a {@link WeatherBatch} within the caller's transaction through two statements
+ * compiled once.  Each row is first offered as an update that only matches a stored day whose
+ * values differ, then as an insert that is ignored if the day is already stored: a changed day
+ * keeps its _ID, an unchanged one isn't written, the same as {@link ForecastReconciler} does
+ * for ContentValues, without reading the stored rows back.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class WeatherBatchWriter {
+
+    // The values are bound once and used by both the SET and the WHERE clauses
+    private static final String SQL_UPDATE_CHANGED = "UPDATE " + WeatherEntry.TABLE_NAME +
+            " SET " +
+            WeatherEntry.COLUMN_HUMIDITY + " = ?1, " +
+            WeatherEntry.COLUMN_PRESSURE + " = ?2, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " = ?3, " +
+            WeatherEntry.COLUMN_DEGREES + " = ?4, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " = ?5, " +
+            WeatherEntry.COLUMN_MIN_TEMP + " = ?6, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " = ?7, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " = ?8" +
+            " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ?9 AND " +
+            WeatherEntry.COLUMN_DATE + " = ?10 AND (" +
+            WeatherEntry.COLUMN_HUMIDITY + " <> ?1 OR " +
+            WeatherEntry.COLUMN_PRESSURE + " <> ?2 OR " +
+            WeatherEntry.COLUMN_WIND_SPEED + " <> ?3 OR " +
+            WeatherEntry.COLUMN_DEGREES + " <> ?4 OR " +
+            WeatherEntry.COLUMN_MAX_TEMP + " <> ?5 OR " +
+            WeatherEntry.COLUMN_MIN_TEMP + " <> ?6 OR " +
+            WeatherEntry.COLUMN_SHORT_DESC + " <> ?7 OR " +
+            WeatherEntry.COLUMN_WEATHER_ID + " <> ?8)";
+
+    // Overrides the REPLACE of the unique key, which would give the day a new _ID.  Only the
+    // unique day of a location is meant to be ignored: OR IGNORE would also drop a row failing
+    // NOT NULL, which WeatherBatch keeps from getting here.
+    private static final String SQL_INSERT_NEW = "INSERT OR IGNORE INTO " +
+            WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final SQLiteStatement mUpdate;
+    private final SQLiteStatement mInsert;
+    private final TimeZone mZone = TimeZone.getDefault();
+
+    WeatherBatchWriter(SQLiteDatabase db) {
+        mUpdate = db.compileStatement(SQL_UPDATE_CHANGED);
+        mInsert = db.compileStatement(SQL_INSERT_NEW);
+    }
+
+    /**
+     * Writes the rows of the batch.  Dates are normalized like those given to bulkInsert.
+     *
+     * @param locationIds the row ids of the locations of the batch
+     * @param changedLocationIds receives the location of every row written
+     * @return the number of rows inserted or updated
+     * @throws OperationCanceledException if the thread was interrupted, the caller's
+     * transaction should then be rolled back
+     */
+    int write(WeatherBatch batch, long[] locationIds, Set<Long> changedLocationIds) {
+        int changed = 0;
+        long lastChangedLocationId = -1;
+        for (int i = 0; i < batch.size; i++) {
+            // As in bulkInsert, the sync calls us on its own thread, interrupted on cancel
+            if (Thread.currentThread().isInterrupted()) {
+                throw new OperationCanceledException();
+            }
+            long locationId = batch.getLocationId(i, locationIds);
+            // Both statements take the values first and the key last
+            bindRow(mUpdate, batch, i, locationId);
+            boolean written = mUpdate.executeUpdateDelete() > 0;
+            if (!written) {
+                bindRow(mInsert, batch, i, locationId);
+                written = mInsert.executeInsert() != -1;
+            }
+            if (written) {
+                changed++;
+                if (locationId != lastChangedLocationId) {
+                    changedLocationIds.add(locationId);
+                    lastChangedLocationId = locationId;
+                }
+            }
+        }
+        return changed;
+    }
+
+    void close() {
+        mUpdate.close();
+        mInsert.close();
+    }
+
+    private void bindRow(SQLiteStatement statement, WeatherBatch batch, int i, long locationId) {
+        statement.bindDouble(1, batch.humidity[i]);
+        statement.bindDouble(2, batch.pressure[i]);
+        statement.bindDouble(3, batch.windSpeed[i]);
+        statement.bindDouble(4, batch.degrees[i]);
+        statement.bindDouble(5, batch.maxTemp[i]);
+        statement.bindDouble(6, batch.minTemp[i]);
+        // Never null, WeatherBatch refuses it
+        statement.bindString(7, batch.shortDesc[i]);
+        statement.bindLong(8, batch.weatherId[i]);
+        statement.bindLong(9, locationId);
+        statement.bindLong(10, normalizeDate(batch.date[i]));
+    }
+
+    /**
+     * The same as {@link WeatherContract#normalizeDate(long)}, without a TimeZone per call.
+     */
+    private long normalizeDate(long date) {
+        return EpochDays.startOfDay(date, mZone);
+    }
+}
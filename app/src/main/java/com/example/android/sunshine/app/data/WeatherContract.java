@@ -19,7 +19,10 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import com.example.android.sunshine.app.EpochDays;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +46,55 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SYNC_METRIC = "sync_metric";
+    public static final String PATH_ARCHIVE = "archive";
+    public static final String PATH_ARCHIVE_AGGREGATE = "archive_aggregate";
+    public static final String PATH_WEEK = "week";
+    public static final String PATH_MONTH = "month";
+
+    // Query parameters of a page of the forecast or of the archive: the rows dated after the
+    // last row of the page before, at most as many as the limit.  The provider seeks straight
+    // to the first row of the page, however far into the result it is.
+    public static final String PARAM_AFTER = "after";
+    public static final String PARAM_LIMIT = "limit";
+
+    // Appends the page parameters to the uri of a forecast or archive query
+    public static Uri buildPageUri(Uri uri, long afterDate, int limit) {
+        return uri.buildUpon()
+                .appendQueryParameter(PARAM_AFTER, Long.toString(afterDate))
+                .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit))
+                .build();
+    }
+
+    // The first date of the page, or the given default if the uri isn't a page
+    public static long getPageStartFromUri(Uri uri, long defaultStart) {
+        String afterString = uri.getQueryParameter(PARAM_AFTER);
+        return afterString == null ? defaultStart
+                : Math.max(defaultStart, Long.parseLong(afterString) + 1);
+    }
+
+    // The row limit of the page, or null if the uri isn't a page
+    public static String getPageLimitFromUri(Uri uri) {
+        return uri.getQueryParameter(PARAM_LIMIT);
+    }
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of their local day.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return EpochDays.startOfDay(startDate, TimeZone.getDefault());
+    }
+
+    // The normalized date of the Monday starting the week of the date
+    public static long getWeekStart(long date) {
+        TimeZone zone = TimeZone.getDefault();
+        return EpochDays.toMillis(EpochDays.getWeekStart(EpochDays.fromMillis(date, zone)), zone);
+    }
+
+    // The normalized date of the first day of the month of the date
+    public static long getMonthStart(long date) {
+        TimeZone zone = TimeZone.getDefault();
+        return EpochDays.toMillis(EpochDays.getMonthStart(EpochDays.fromMillis(date, zone)),
+                zone);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -126,6 +169,29 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Deleting days through this URI moves them to the archive first, see ArchiveEntry
+        public static final Uri CONTENT_ARCHIVING_URI = CONTENT_URI.buildUpon()
+                .appendQueryParameter(PATH_ARCHIVE, "1").build();
+
+        // Method of ContentResolver.call() that writes a WeatherBatch, like bulkInsert only
+        // without a ContentValues per row.  Needs Honeycomb or later.
+        public static final String METHOD_INSERT_BATCH = "insert_weather_batch";
+
+        // Method of ContentResolver.call() that returns the hits and misses of the in-memory
+        // forecast cache, under CACHE_HITS and CACHE_MISSES
+        public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+        // Method of ContentResolver.call() that empties the forecast cache, as a write would
+        public static final String METHOD_CLEAR_CACHE = "clear_cache";
+        // Method of ContentResolver.call() that returns the first day of the location given as
+        // the argument from the date under COLUMN_DATE on, see TodaySnapshot
+        public static final String METHOD_GET_TODAY = "get_today_snapshot";
+        public static final String CACHE_HITS = "hits";
+        public static final String CACHE_MISSES = "misses";
+        // Method of ContentResolver.call() that returns the slow query log as text under
+        // SLOW_QUERIES.  Debug builds only, a release build has no log.
+        public static final String METHOD_GET_SLOW_QUERIES = "get_slow_queries";
+        public static final String SLOW_QUERIES = "slow_queries";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -134,30 +200,40 @@ public class WeatherContract {
             Student: This is the buildWeatherLocation function you filled in.
          */
         public static Uri buildWeatherLocation(String locationSetting) {
-            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+            return WeatherUris.getLocationUri(locationSetting);
         }
 
+        // The weather URIs are interned, the same location and day give the same instance
         public static Uri buildWeatherLocationWithStartDate(
                 String locationSetting, long startDate) {
-            long normalizedDate = normalizeDate(startDate);
-            return CONTENT_URI.buildUpon().appendPath(locationSetting)
-                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
+            return WeatherUris.getStartDateUri(locationSetting, normalizeDate(startDate));
         }
 
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
-            return CONTENT_URI.buildUpon().appendPath(locationSetting)
-                    .appendPath(Long.toString(normalizeDate(date))).build();
+            return WeatherUris.getDateUri(locationSetting, normalizeDate(date));
         }
 
         public static String getLocationSettingFromUri(Uri uri) {
+            WeatherUris.Parts parts = WeatherUris.getParts(uri);
+            if (parts != null) {
+                return parts.mLocationSetting;
+            }
             return uri.getPathSegments().get(1);
         }
 
         public static long getDateFromUri(Uri uri) {
+            WeatherUris.Parts parts = WeatherUris.getParts(uri);
+            if (parts != null && parts.hasDate()) {
+                return parts.mDate;
+            }
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
         public static long getStartDateFromUri(Uri uri) {
+            WeatherUris.Parts parts = WeatherUris.getParts(uri);
+            if (parts != null) {
+                return parts.mStartDate;
+            }
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
                 return Long.parseLong(dateString);
@@ -165,4 +241,156 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        Inner class that defines the table contents of the archive table: the past days of each
+        location, once the forecast no longer holds them.  The values are stored in fixed point,
+        as whole multiples of 1 / FIXED_POINT_SCALE, and read back as plain numbers.
+     */
+    public static final class ArchiveEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ARCHIVE;
+
+        public static final String TABLE_NAME = "archive";
+
+        // The stored values are the real ones times this, rounded
+        public static final int FIXED_POINT_SCALE = 100;
+
+        // Days older than this, counted back from the last day archived, are dropped.  Their
+        // weeks and months stay in the aggregates.
+        public static final int RETENTION_DAYS = 2 * 365;
+
+        // The same as those of the weather table, the description follows from the weather id
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_HUMIDITY = WeatherEntry.COLUMN_HUMIDITY;
+        public static final String COLUMN_PRESSURE = WeatherEntry.COLUMN_PRESSURE;
+        public static final String COLUMN_WIND_SPEED = WeatherEntry.COLUMN_WIND_SPEED;
+        public static final String COLUMN_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+        // Query parameters of the range URIs, the first and last dates wanted
+        public static final String PARAM_START = "start";
+        public static final String PARAM_END = "end";
+
+        // The archived days of the location from start to end
+        public static Uri buildArchiveLocationWithRange(String locationSetting, long start,
+                                                        long end) {
+            return withRange(CONTENT_URI.buildUpon().appendPath(locationSetting), start, end);
+        }
+
+        // The weekly aggregates of the location for the weeks from start to end
+        public static Uri buildWeeksWithRange(String locationSetting, long start, long end) {
+            return withRange(CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(PATH_WEEK), start, end);
+        }
+
+        // The monthly aggregates of the location for the months from start to end
+        public static Uri buildMonthsWithRange(String locationSetting, long start, long end) {
+            return withRange(CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(PATH_MONTH), start, end);
+        }
+
+        private static Uri withRange(Uri.Builder builder, long start, long end) {
+            return builder
+                    .appendQueryParameter(PARAM_START, Long.toString(normalizeDate(start)))
+                    .appendQueryParameter(PARAM_END, Long.toString(normalizeDate(end)))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_START);
+            return dateString == null ? Long.MIN_VALUE : Long.parseLong(dateString);
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END);
+            return dateString == null ? Long.MAX_VALUE : Long.parseLong(dateString);
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the archive aggregate table: one row per
+        location and week or month, kept up to date as days are archived rather than computed
+        from them.  The range URIs of ArchiveEntry read it.
+     */
+    public static final class AggregateEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE_AGGREGATE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" +
+                        PATH_ARCHIVE_AGGREGATE;
+
+        public static final String TABLE_NAME = "archive_aggregate";
+
+        // Weeks older than this, counted back from the last day archived, are dropped.  Months
+        // are kept.
+        public static final int WEEK_RETENTION_DAYS = 10 * 365;
+
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+        // PATH_WEEK or PATH_MONTH
+        public static final String COLUMN_PERIOD = "period";
+        // Normalized date of the first day of the period
+        public static final String COLUMN_PERIOD_START = "period_start";
+        // Number of days archived in the period
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest min and highest max temperature of the days, in fixed point
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_MIN_HUMIDITY = "min_humidity";
+        public static final String COLUMN_MAX_HUMIDITY = "max_humidity";
+        public static final String COLUMN_MIN_WIND = "min_wind";
+        public static final String COLUMN_MAX_WIND = "max_wind";
+
+        // Sums over the days, in fixed point: the temperature of a day is halfway between its
+        // min and max
+        public static final String COLUMN_TEMP_SUM = "temp_sum";
+        public static final String COLUMN_HUMIDITY_SUM = "humidity_sum";
+        public static final String COLUMN_WIND_SUM = "wind_sum";
+
+        // The means, worked out from the sums by the range queries
+        public static final String COLUMN_MEAN_TEMP = "mean_temp";
+        public static final String COLUMN_MEAN_HUMIDITY = "mean_humidity";
+        public static final String COLUMN_MEAN_WIND = "mean_wind";
+    }
+
+    /* Inner class that defines the table contents of the sync metric table */
+    public static final class SyncMetricEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_METRIC).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_METRIC;
+
+        public static final String TABLE_NAME = "sync_metric";
+
+        // The table is a ring buffer, only the most recent rows are kept
+        public static final int MAX_ROWS = 2000;
+
+        // Start of the sync the measurement belongs to, in milliseconds since the epoch.
+        // All the phases of one sync share it.
+        public static final String COLUMN_SYNC_TIME = "sync_time";
+        // Name of the measured phase of the sync, e.g. "connect" or "bulk_insert"
+        public static final String COLUMN_PHASE = "phase";
+        // Time spent in the phase, in milliseconds
+        public static final String COLUMN_DURATION = "duration";
+        // Bytes transferred during the phase, 0 when the phase doesn't touch the network
+        public static final String COLUMN_BYTES = "bytes";
+        // Rows written during the phase, 0 when the phase doesn't touch the database
+        public static final String COLUMN_ROWS = "rows";
+    }
 }
@@ -15,11 +15,16 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncMetricEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,12 +33,112 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Measurements of the phases of each sync.  The trigger turns the table into a ring
+    // buffer: every insert drops whatever fell out of the last MAX_ROWS rows.
+    // Added in version 3.
+    private static final String SQL_CREATE_SYNC_METRIC_TABLE = "CREATE TABLE " + SyncMetricEntry.TABLE_NAME + " (" +
+            SyncMetricEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+            SyncMetricEntry.COLUMN_SYNC_TIME + " INTEGER NOT NULL, " +
+            SyncMetricEntry.COLUMN_PHASE + " TEXT NOT NULL, " +
+            SyncMetricEntry.COLUMN_DURATION + " INTEGER NOT NULL, " +
+            SyncMetricEntry.COLUMN_BYTES + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricEntry.COLUMN_ROWS + " INTEGER NOT NULL DEFAULT 0 " +
+            " );";
+
+    private static final String SQL_CREATE_SYNC_METRIC_RING_TRIGGER = "CREATE TRIGGER " +
+            SyncMetricEntry.TABLE_NAME + "_ring AFTER INSERT ON " + SyncMetricEntry.TABLE_NAME +
+            " BEGIN DELETE FROM " + SyncMetricEntry.TABLE_NAME +
+            " WHERE " + SyncMetricEntry._ID + " <= NEW." + SyncMetricEntry._ID +
+            " - " + SyncMetricEntry.MAX_ROWS + "; END;";
+
+    // The forecast list asks for one location from a date on.  The unique key starts with the
+    // date, so it can't go straight to a location: this index can, and it holds every weather
+    // column the list shows, so the list never has to read the table itself.
+    // Added in version 4.
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date";
+    static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            WEATHER_LOCATION_DATE_INDEX + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ");";
+
+    // The past days, in fixed point.  The range queries go to a location and a date, hence the
+    // order of the key.
+    // Added in version 5.
+    private static final String SQL_CREATE_ARCHIVE_TABLE = "CREATE TABLE " + ArchiveEntry.TABLE_NAME + " (" +
+            ArchiveEntry._ID + " INTEGER PRIMARY KEY," +
+            ArchiveEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_HUMIDITY + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_PRESSURE + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_WIND_SPEED + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_DEGREES + " INTEGER NOT NULL, " +
+            " FOREIGN KEY (" + ArchiveEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "));";
+
+    static final String ARCHIVE_LOCATION_DATE_INDEX = "archive_location_date";
+    private static final String SQL_CREATE_ARCHIVE_LOCATION_DATE_INDEX = "CREATE UNIQUE INDEX " +
+            ARCHIVE_LOCATION_DATE_INDEX + " ON " + ArchiveEntry.TABLE_NAME + " (" +
+            ArchiveEntry.COLUMN_LOC_KEY + ", " +
+            ArchiveEntry.COLUMN_DATE + ");";
+
+    // The weekly and monthly aggregates of the archive, one row per location and period.
+    // Added in version 5.
+    private static final String SQL_CREATE_AGGREGATE_TABLE = "CREATE TABLE " + AggregateEntry.TABLE_NAME + " (" +
+            AggregateEntry._ID + " INTEGER PRIMARY KEY," +
+            AggregateEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_PERIOD + " TEXT NOT NULL, " +
+            AggregateEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_TEMP_SUM + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_MIN_HUMIDITY + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_MAX_HUMIDITY + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_HUMIDITY_SUM + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_MIN_WIND + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_MAX_WIND + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_WIND_SUM + " INTEGER NOT NULL, " +
+            " FOREIGN KEY (" + AggregateEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "));";
+
+    static final String AGGREGATE_PERIOD_INDEX = "archive_aggregate_period";
+    private static final String SQL_CREATE_AGGREGATE_PERIOD_INDEX = "CREATE UNIQUE INDEX " +
+            AGGREGATE_PERIOD_INDEX + " ON " + AggregateEntry.TABLE_NAME + " (" +
+            AggregateEntry.COLUMN_LOC_KEY + ", " +
+            AggregateEntry.COLUMN_PERIOD + ", " +
+            AggregateEntry.COLUMN_PERIOD_START + ");";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // The sync writes while the UI, the widgets and Muzei read.  With a write-ahead log
+            // readers see the last committed data instead of waiting for the writer, and the
+            // framework opens a pool of connections so they can read in parallel.
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        if (db.isWriteAheadLoggingEnabled()) {
+            // Only syncs at checkpoints rather than at every commit.  The database can't be
+            // corrupted that way, a power cut may lose the last sync at worst, and it is only
+            // a cache of the server.
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
     }
 
     @Override
@@ -81,18 +186,44 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_METRIC_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_METRIC_RING_TRIGGER);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        createArchive(sqLiteDatabase);
+    }
+
+    private static void createArchive(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_AGGREGATE_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_AGGREGATE_PERIOD_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        // The upgrade runs in a transaction, if any step fails the database stays as it was.
+        if (oldVersion < 2) {
+            // We don't know the shape of these any more.  The database is only a cache for
+            // online data, so discard the data and start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncMetricEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // From here on each version builds on the one before and keeps the forecasts, so an
+        // app update doesn't leave the user waiting on the network for something to show.
+        if (oldVersion < 3) {
+            sqLiteDatabase.execSQL(SQL_CREATE_SYNC_METRIC_TABLE);
+            sqLiteDatabase.execSQL(SQL_CREATE_SYNC_METRIC_RING_TRIGGER);
+        }
+        if (oldVersion < 4) {
+            sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        }
+        if (oldVersion < 5) {
+            createArchive(sqLiteDatabase);
+        }
     }
 }
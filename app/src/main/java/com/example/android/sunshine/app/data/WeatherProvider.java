@@ -17,23 +17,54 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v4.os.OperationCanceledException;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private NotificationCoalescer mNotifications;
+    private final ForecastCache mCache = new ForecastCache(FORECAST_CACHE_SIZE);
+    // Only kept by debug builds
+    private final SlowQueryLog mSlowQueries = BuildConfig.DEBUG ? new SlowQueryLog() : null;
+
+    // Long enough to gather the writes of a settings change, short enough not to be seen
+    private static final long NOTIFY_DEBOUNCE_MILLIS = 100;
+    // A handful of locations, each with its list and the days open in the detail screen
+    private static final int FORECAST_CACHE_SIZE = 32;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int SYNC_METRIC = 400;
+    static final int ARCHIVE = 500;
+    static final int ARCHIVE_WITH_LOCATION = 501;
+    static final int ARCHIVE_WEEKS_WITH_LOCATION = 502;
+    static final int ARCHIVE_MONTHS_WITH_LOCATION = 503;
+    static final int ARCHIVE_AGGREGATE = 600;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -51,6 +82,89 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    private static final SQLiteQueryBuilder sArchiveByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sAggregateByLocationSettingQueryBuilder;
+
+    static {
+        //archive INNER JOIN location ON archive.location_id = location._id
+        sArchiveByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sArchiveByLocationSettingQueryBuilder.setTables(
+                WeatherContract.ArchiveEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.ArchiveEntry.TABLE_NAME +
+                        "." + WeatherContract.ArchiveEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+        // The values are read back from fixed point
+        Map<String, String> archiveColumns = new HashMap<String, String>();
+        archiveColumns.put(WeatherContract.ArchiveEntry._ID,
+                WeatherContract.ArchiveEntry.TABLE_NAME + "." + WeatherContract.ArchiveEntry._ID +
+                        " AS " + WeatherContract.ArchiveEntry._ID);
+        archiveColumns.put(WeatherContract.ArchiveEntry.COLUMN_DATE,
+                WeatherContract.ArchiveEntry.COLUMN_DATE);
+        archiveColumns.put(WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID,
+                WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID);
+        archiveColumns.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        for (String column : new String[]{
+                WeatherContract.ArchiveEntry.COLUMN_MIN_TEMP,
+                WeatherContract.ArchiveEntry.COLUMN_MAX_TEMP,
+                WeatherContract.ArchiveEntry.COLUMN_HUMIDITY,
+                WeatherContract.ArchiveEntry.COLUMN_PRESSURE,
+                WeatherContract.ArchiveEntry.COLUMN_WIND_SPEED,
+                WeatherContract.ArchiveEntry.COLUMN_DEGREES}) {
+            archiveColumns.put(column, fromFixedPoint(column) + " AS " + column);
+        }
+        sArchiveByLocationSettingQueryBuilder.setProjectionMap(archiveColumns);
+
+        //archive_aggregate INNER JOIN location ON archive_aggregate.location_id = location._id
+        sAggregateByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sAggregateByLocationSettingQueryBuilder.setTables(
+                WeatherContract.AggregateEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.AggregateEntry.TABLE_NAME +
+                        "." + WeatherContract.AggregateEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+        Map<String, String> aggregateColumns = new HashMap<String, String>();
+        aggregateColumns.put(WeatherContract.AggregateEntry._ID,
+                WeatherContract.AggregateEntry.TABLE_NAME + "." +
+                        WeatherContract.AggregateEntry._ID +
+                        " AS " + WeatherContract.AggregateEntry._ID);
+        aggregateColumns.put(WeatherContract.AggregateEntry.COLUMN_PERIOD_START,
+                WeatherContract.AggregateEntry.COLUMN_PERIOD_START);
+        aggregateColumns.put(WeatherContract.AggregateEntry.COLUMN_DAY_COUNT,
+                WeatherContract.AggregateEntry.COLUMN_DAY_COUNT);
+        aggregateColumns.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        for (String column : new String[]{
+                WeatherContract.AggregateEntry.COLUMN_MIN_TEMP,
+                WeatherContract.AggregateEntry.COLUMN_MAX_TEMP,
+                WeatherContract.AggregateEntry.COLUMN_MIN_HUMIDITY,
+                WeatherContract.AggregateEntry.COLUMN_MAX_HUMIDITY,
+                WeatherContract.AggregateEntry.COLUMN_MIN_WIND,
+                WeatherContract.AggregateEntry.COLUMN_MAX_WIND}) {
+            aggregateColumns.put(column, fromFixedPoint(column) + " AS " + column);
+        }
+        aggregateColumns.put(WeatherContract.AggregateEntry.COLUMN_MEAN_TEMP,
+                fromFixedPoint(WeatherContract.AggregateEntry.COLUMN_TEMP_SUM) + " / " +
+                        WeatherContract.AggregateEntry.COLUMN_DAY_COUNT +
+                        " AS " + WeatherContract.AggregateEntry.COLUMN_MEAN_TEMP);
+        aggregateColumns.put(WeatherContract.AggregateEntry.COLUMN_MEAN_HUMIDITY,
+                fromFixedPoint(WeatherContract.AggregateEntry.COLUMN_HUMIDITY_SUM) + " / " +
+                        WeatherContract.AggregateEntry.COLUMN_DAY_COUNT +
+                        " AS " + WeatherContract.AggregateEntry.COLUMN_MEAN_HUMIDITY);
+        aggregateColumns.put(WeatherContract.AggregateEntry.COLUMN_MEAN_WIND,
+                fromFixedPoint(WeatherContract.AggregateEntry.COLUMN_WIND_SUM) + " / " +
+                        WeatherContract.AggregateEntry.COLUMN_DAY_COUNT +
+                        " AS " + WeatherContract.AggregateEntry.COLUMN_MEAN_WIND);
+        sAggregateByLocationSettingQueryBuilder.setProjectionMap(aggregateColumns);
+    }
+
+    private static String fromFixedPoint(String column) {
+        return "(" + column + " / " + (double) WeatherContract.ArchiveEntry.FIXED_POINT_SCALE + ")";
+    }
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -68,9 +182,15 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    /*
+        A page of the forecast, see WeatherContract.buildPageUri, is only a later start date and
+        a limit: the location-first index takes the query straight to the first row of the page.
+     */
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long startDate = WeatherContract.getPageStartFromUri(uri,
+                WeatherContract.WeatherEntry.getStartDateFromUri(uri));
+        String limit = WeatherContract.getPageLimitFromUri(uri);
 
         String[] selectionArgs;
         String selection;
@@ -82,14 +202,75 @@ public class WeatherProvider extends ContentProvider {
             selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
             selection = sLocationSettingWithStartDateSelection;
         }
+        if (limit != null) {
+            // The page follows the order of the dates
+            sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return runQuery(sWeatherByLocationSettingQueryBuilder,
                 projection,
                 selection,
                 selectionArgs,
-                null,
-                null,
-                sortOrder
+                sortOrder,
+                limit
+        );
+    }
+
+    //location.location_setting = ? AND date BETWEEN ? AND ?
+    private static final String sArchiveLocationSettingWithRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.ArchiveEntry.COLUMN_DATE + " BETWEEN ? AND ? ";
+
+    //location.location_setting = ? AND period = ? AND period_start BETWEEN ? AND ?
+    private static final String sAggregateLocationSettingWithRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.AggregateEntry.COLUMN_PERIOD + " = ? AND " +
+                    WeatherContract.AggregateEntry.COLUMN_PERIOD_START + " BETWEEN ? AND ? ";
+
+    /*
+        The range queries go through the unique indexes of the archive tables, which start with
+        the location: they read the rows in the range and nothing else.
+     */
+    private Cursor getArchiveByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        long start = WeatherContract.getPageStartFromUri(uri,
+                WeatherContract.ArchiveEntry.getStartDateFromUri(uri));
+        String limit = WeatherContract.getPageLimitFromUri(uri);
+        if (sortOrder == null || limit != null) {
+            sortOrder = WeatherContract.ArchiveEntry.COLUMN_DATE + " ASC";
+        }
+        return runQuery(sArchiveByLocationSettingQueryBuilder,
+                projection,
+                sArchiveLocationSettingWithRangeSelection,
+                new String[]{
+                        WeatherContract.ArchiveEntry.getLocationSettingFromUri(uri),
+                        Long.toString(start),
+                        Long.toString(WeatherContract.ArchiveEntry.getEndDateFromUri(uri))},
+                sortOrder,
+                limit
+        );
+    }
+
+    private Cursor getAggregatesByLocationSetting(Uri uri, String period, String[] projection,
+                                                  String sortOrder) {
+        // The first period is the one holding the start date
+        long start = WeatherContract.ArchiveEntry.getStartDateFromUri(uri);
+        if (start != Long.MIN_VALUE) {
+            start = WeatherContract.PATH_WEEK.equals(period)
+                    ? WeatherContract.getWeekStart(start) : WeatherContract.getMonthStart(start);
+        }
+        return runQuery(sAggregateByLocationSettingQueryBuilder,
+                projection,
+                sAggregateLocationSettingWithRangeSelection,
+                new String[]{
+                        WeatherContract.ArchiveEntry.getLocationSettingFromUri(uri),
+                        period,
+                        Long.toString(start),
+                        Long.toString(WeatherContract.ArchiveEntry.getEndDateFromUri(uri))},
+                sortOrder == null
+                        ? WeatherContract.AggregateEntry.COLUMN_PERIOD_START + " ASC" : sortOrder,
+                null
         );
     }
 
@@ -98,10 +279,47 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return runQuery(sWeatherByLocationSettingQueryBuilder,
                 projection,
                 sLocationSettingAndDaySelection,
                 new String[]{locationSetting, Long.toString(date)},
+                sortOrder,
+                null
+        );
+    }
+
+    /*
+        The queries go through runQuery and queryTable, which hand their SQL to the slow query
+        log of a debug build, for it to explain the query if it turns out slow.
+     */
+    private Cursor runQuery(SQLiteQueryBuilder builder, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder, String limit) {
+        if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            mSlowQueries.setSql(builder.buildQuery(projection, selection, null, null, sortOrder,
+                    limit));
+        }
+        return builder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder,
+                limit
+        );
+    }
+
+    private Cursor queryTable(String table, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
+        if (BuildConfig.DEBUG) {
+            mSlowQueries.setSql(SQLiteQueryBuilder.buildQueryString(false, table, projection,
+                    selection, null, null, sortOrder, null));
+        }
+        return mOpenHelper.getReadableDatabase().query(
+                table,
+                projection,
+                selection,
+                selectionArgs,
                 null,
                 null,
                 sortOrder
@@ -130,6 +348,15 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_METRIC, SYNC_METRIC);
+
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE, ARCHIVE);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE + "/*", ARCHIVE_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE + "/*/" + WeatherContract.PATH_WEEK,
+                ARCHIVE_WEEKS_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE + "/*/" + WeatherContract.PATH_MONTH,
+                ARCHIVE_MONTHS_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE_AGGREGATE, ARCHIVE_AGGREGATE);
         return matcher;
     }
 
@@ -140,6 +367,8 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mNotifications = new NotificationCoalescer(getContext().getContentResolver(),
+                NOTIFY_DEBOUNCE_MILLIS);
         return true;
     }
 
@@ -164,6 +393,15 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case SYNC_METRIC:
+                return WeatherContract.SyncMetricEntry.CONTENT_TYPE;
+            case ARCHIVE:
+            case ARCHIVE_WITH_LOCATION:
+                return WeatherContract.ArchiveEntry.CONTENT_TYPE;
+            case ARCHIVE_WEEKS_WITH_LOCATION:
+            case ARCHIVE_MONTHS_WITH_LOCATION:
+            case ARCHIVE_AGGREGATE:
+                return WeatherContract.AggregateEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,6 +410,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long start = BuildConfig.DEBUG ? mSlowQueries.start() : 0;
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
@@ -179,38 +418,71 @@ public class WeatherProvider extends ContentProvider {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                String cacheKey = ForecastCache.getKey(uri, projection, sortOrder);
+                retCursor = mCache.get(cacheKey);
+                if (retCursor == null) {
+                    long generation = mCache.getGeneration();
+                    retCursor = mCache.put(cacheKey, generation,
+                            getWeatherByLocationSettingAndDate(uri, projection, sortOrder));
+                }
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                String cacheKey = ForecastCache.getKey(uri, projection, sortOrder);
+                retCursor = mCache.get(cacheKey);
+                if (retCursor == null) {
+                    long generation = mCache.getGeneration();
+                    retCursor = mCache.put(cacheKey, generation,
+                            getWeatherByLocationSetting(uri, projection, sortOrder));
+                }
                 break;
             }
             // "weather"
             case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
+                retCursor = queryTable(WeatherContract.WeatherEntry.TABLE_NAME, projection,
+                        selection, selectionArgs, sortOrder);
                 break;
             }
             // "location"
             case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
+                retCursor = queryTable(WeatherContract.LocationEntry.TABLE_NAME, projection,
+                        selection, selectionArgs, sortOrder);
+                break;
+            }
+            // "sync_metric"
+            case SYNC_METRIC: {
+                retCursor = queryTable(WeatherContract.SyncMetricEntry.TABLE_NAME, projection,
+                        selection, selectionArgs, sortOrder);
+                break;
+            }
+            // "archive/*"
+            case ARCHIVE_WITH_LOCATION: {
+                retCursor = getArchiveByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "archive/*/week"
+            case ARCHIVE_WEEKS_WITH_LOCATION: {
+                retCursor = getAggregatesByLocationSetting(uri, WeatherContract.PATH_WEEK,
+                        projection, sortOrder);
+                break;
+            }
+            // "archive/*/month"
+            case ARCHIVE_MONTHS_WITH_LOCATION: {
+                retCursor = getAggregatesByLocationSetting(uri, WeatherContract.PATH_MONTH,
+                        projection, sortOrder);
+                break;
+            }
+            // "archive", in fixed point
+            case ARCHIVE: {
+                retCursor = queryTable(WeatherContract.ArchiveEntry.TABLE_NAME, projection,
+                        selection, selectionArgs, sortOrder);
+                break;
+            }
+            // "archive_aggregate", in fixed point
+            case ARCHIVE_AGGREGATE: {
+                retCursor = queryTable(WeatherContract.AggregateEntry.TABLE_NAME, projection,
+                        selection, selectionArgs, sortOrder);
                 break;
             }
 
@@ -218,17 +490,69 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        if (BuildConfig.DEBUG) {
+            mSlowQueries.onQuery(mOpenHelper.getReadableDatabase(), uri, projection, selection,
+                    selectionArgs, retCursor, start);
+        }
         return retCursor;
     }
 
     /*
-        Student: Add the ability to insert Locations to the implementation of this function.
+        The writes are timed for the slow query log in debug builds, see SlowQueryLog.
      */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        if (!BuildConfig.DEBUG) {
+            return insertRow(uri, values);
+        }
+        long start = mSlowQueries.start();
+        Uri returnUri = insertRow(uri, values);
+        mSlowQueries.onWrite("insert", uri, null, null, 1, start);
+        return returnUri;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        if (!BuildConfig.DEBUG) {
+            return deleteRows(uri, selection, selectionArgs);
+        }
+        long start = mSlowQueries.start();
+        int rowsDeleted = deleteRows(uri, selection, selectionArgs);
+        mSlowQueries.onWrite("delete", uri, selection, selectionArgs, rowsDeleted, start);
+        return rowsDeleted;
+    }
+
+    @Override
+    public int update(
+            Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        if (!BuildConfig.DEBUG) {
+            return updateRows(uri, values, selection, selectionArgs);
+        }
+        long start = mSlowQueries.start();
+        int rowsUpdated = updateRows(uri, values, selection, selectionArgs);
+        mSlowQueries.onWrite("update", uri, selection, selectionArgs, rowsUpdated, start);
+        return rowsUpdated;
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        if (!BuildConfig.DEBUG) {
+            return bulkInsertRows(uri, values);
+        }
+        long start = mSlowQueries.start();
+        int returnCount = bulkInsertRows(uri, values);
+        mSlowQueries.onWrite("bulkInsert", uri, null, null, returnCount, start);
+        return returnCount;
+    }
+
+    /*
+        Student: Add the ability to insert Locations to the implementation of this function.
+     */
+    private Uri insertRow(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
+        Uri changedUri = uri;
 
         switch (match) {
             case WEATHER: {
@@ -238,32 +562,61 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                // Only the forecast of that location changed
+                Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                String locationSetting = locationId == null ? null
+                        : getLocationSetting(db, locationId);
+                if (locationSetting != null) {
+                    changedUri = WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting);
+                }
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                // A location is only stored once: give back the stored one, which hasn't changed
+                long _id = findLocation(db,
+                        values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                if (_id != -1) {
+                    return WeatherContract.LocationEntry.buildLocationUri(_id);
+                }
+                _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case SYNC_METRIC: {
+                long _id = db.insert(WeatherContract.SyncMetricEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = ContentUris.withAppendedId(uri, _id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (match != SYNC_METRIC) {
+            mCache.invalidate();
+        }
+        mNotifications.notifyChange(changedUri);
         return returnUri;
     }
 
-    @Override
-    public int delete(Uri uri, String selection, String[] selectionArgs) {
+    private int deleteRows(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        Uri changedUri = uri;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
+                if (uri.getQueryParameter(WeatherContract.PATH_ARCHIVE) != null) {
+                    rowsDeleted = archiveAndDelete(db, selection, selectionArgs);
+                    changedUri = WeatherContract.WeatherEntry.CONTENT_URI;
+                    break;
+                }
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
                 break;
@@ -271,12 +624,51 @@ public class WeatherProvider extends ContentProvider {
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case SYNC_METRIC:
+                rowsDeleted = db.delete(
+                        WeatherContract.SyncMetricEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case ARCHIVE:
+                rowsDeleted = db.delete(
+                        WeatherContract.ArchiveEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case ARCHIVE_AGGREGATE:
+                rowsDeleted = db.delete(
+                        WeatherContract.AggregateEntry.TABLE_NAME, selection, selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (match == WEATHER || match == LOCATION) {
+                mCache.invalidate();
+            }
+            mNotifications.notifyChange(changedUri);
+        }
+        return rowsDeleted;
+    }
+
+    /*
+        Moves the weather rows matching the selection to the archive and deletes them, in one
+        transaction.
+     */
+    private int archiveAndDelete(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        int rowsDeleted;
+        int archived;
+        db.beginTransaction();
+        ArchiveWriter archive = new ArchiveWriter(db);
+        try {
+            archived = archive.archive(selection, selectionArgs);
+            rowsDeleted = db.delete(
+                    WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            archive.close();
+            db.endTransaction();
+        }
+        if (archived != 0) {
+            mNotifications.notifyChange(WeatherContract.ArchiveEntry.CONTENT_URI);
         }
         return rowsDeleted;
     }
@@ -289,8 +681,7 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
-    @Override
-    public int update(
+    private int updateRows(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
@@ -310,38 +701,259 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mCache.invalidate();
+            mNotifications.notifyChange(uri);
         }
         return rowsUpdated;
     }
 
-    @Override
-    public int bulkInsert(Uri uri, ContentValues[] values) {
+    /*
+        Weather rows are reconciled against what is already stored rather than blindly replaced:
+        a row that didn't change is left alone, a row that did is updated in place so it keeps
+        its _ID, and only the days that changed are notified.  The return value is the number
+        of rows inserted or updated.
+     */
+    private int bulkInsertRows(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                Set<Uri> changedUris = new LinkedHashSet<Uri>();
                 try {
+                    ForecastReconciler reconciler = new ForecastReconciler(db);
                     for (ContentValues value : values) {
+                        // The sync adapter calls us on its own thread, which the framework
+                        // interrupts when the sync is canceled: leave the rows as they were
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new OperationCanceledException();
+                        }
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+                        if (reconciler.apply(value)) {
                             returnCount++;
+                            changedUris.add(reconciler.getChangedDayUri());
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
+                    // Whether it committed or not, other threads may have cached what we read
+                    mCache.invalidate();
+                }
+                for (Uri changedUri : changedUris) {
+                    mNotifications.notifyChange(changedUri);
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
                 return returnCount;
+            case SYNC_METRIC:
+                // All the phases of a sync go in together
+                db.beginTransaction();
+                int metricCount = 0;
+                try {
+                    for (ContentValues value : values) {
+                        if (db.insert(WeatherContract.SyncMetricEntry.TABLE_NAME, null, value) != -1) {
+                            metricCount++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                mNotifications.notifyChange(uri);
+                return metricCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.WeatherEntry.METHOD_INSERT_BATCH.equals(method)) {
+            if (!BuildConfig.DEBUG) {
+                return insertBatch(extras);
+            }
+            long start = mSlowQueries.start();
+            Bundle result = insertBatch(extras);
+            mSlowQueries.onWrite(method, WeatherContract.WeatherEntry.CONTENT_URI, null, null,
+                    result.getInt(WeatherBatch.RESULT_CHANGED), start);
+            return result;
+        } else if (WeatherContract.WeatherEntry.METHOD_GET_TODAY.equals(method)) {
+            TodaySnapshot snapshot = getTodaySnapshot(arg,
+                    extras.getLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+            return snapshot == null ? null : snapshot.toBundle();
+        } else if (WeatherContract.WeatherEntry.METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.WeatherEntry.CACHE_HITS, mCache.getHits());
+            result.putInt(WeatherContract.WeatherEntry.CACHE_MISSES, mCache.getMisses());
+            return result;
+        } else if (WeatherContract.WeatherEntry.METHOD_CLEAR_CACHE.equals(method)) {
+            mCache.invalidate();
+            return null;
+        } else if (BuildConfig.DEBUG
+                && WeatherContract.WeatherEntry.METHOD_GET_SLOW_QUERIES.equals(method)) {
+            Bundle result = new Bundle();
+            result.putString(WeatherContract.WeatherEntry.SLOW_QUERIES, mSlowQueries.export());
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /*
+        The batch counterpart of bulkInsert for weather, see WeatherBatch.  The locations, the
+        rows and the deletion of past days are written in one transaction, and the changes
+        notified once it has committed.  Returns the number of rows inserted or updated under
+        WeatherBatch.RESULT_CHANGED and the number of days deleted under
+        WeatherBatch.RESULT_DELETED.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Bundle insertBatch(Bundle extras) {
+        WeatherBatch batch = WeatherBatch.fromExtras(extras);
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Set<Long> changedLocationIds = new LinkedHashSet<Long>();
+        List<String> changedLocationSettings = new ArrayList<String>();
+        int changed;
+        int deleted = 0;
+        db.beginTransaction();
+        WeatherBatchWriter writer = new WeatherBatchWriter(db);
+        boolean outermost = mNotifications.beginBatch();
+        boolean committed = false;
+        try {
+            long[] locationIds = new long[batch.locationCount];
+            for (int i = 0; i < batch.locationCount; i++) {
+                // Gives back the stored location if there is one
+                Uri locationUri = insert(WeatherContract.LocationEntry.CONTENT_URI,
+                        batch.getLocationValues(i));
+                locationIds[i] = ContentUris.parseId(locationUri);
+            }
+            changed = writer.write(batch, locationIds, changedLocationIds);
+            if (batch.deleteUpTo != WeatherBatch.NO_DELETE) {
+                deleted = delete(WeatherContract.WeatherEntry.CONTENT_ARCHIVING_URI,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(batch.deleteUpTo)});
+            }
+            // A batch can hold a lot of days, a notification per location covers them all
+            for (long locationId : changedLocationIds) {
+                String locationSetting = getLocationSetting(db, locationId);
+                if (locationSetting == null) {
+                    mNotifications.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+                } else {
+                    mNotifications.notifyChange(
+                            WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+                    changedLocationSettings.add(locationSetting);
+                }
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            writer.close();
+            db.endTransaction();
+            mCache.invalidate();
+            mNotifications.endBatch(outermost, committed);
+        }
+        // Work out the snapshots now, so that the widget and the others don't have to
+        long now = System.currentTimeMillis();
+        for (String locationSetting : changedLocationSettings) {
+            getTodaySnapshot(locationSetting, now);
+        }
+        Bundle result = new Bundle();
+        result.putInt(WeatherBatch.RESULT_CHANGED, changed);
+        result.putInt(WeatherBatch.RESULT_DELETED, deleted);
+        return result;
+    }
+
+    /*
+        Applies the operations in one transaction, so they either all happen or none does, and
+        notifies each changed URI once they have committed rather than once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long start = BuildConfig.DEBUG ? mSlowQueries.start() : 0;
+        db.beginTransaction();
+        boolean outermost = mNotifications.beginBatch();
+        boolean committed = false;
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            // The operations may have cached what they read within the transaction
+            mCache.invalidate();
+            mNotifications.endBatch(outermost, committed);
+            if (BuildConfig.DEBUG) {
+                mSlowQueries.onWrite("applyBatch", WeatherContract.BASE_CONTENT_URI, null, null,
+                        operations.size(), start);
+            }
+        }
+    }
+
+    /*
+        Reads the snapshot from the cache, or from the database if it isn't cached.
+     */
+    private TodaySnapshot getTodaySnapshot(String locationSetting, long date) {
+        long day = WeatherContract.normalizeDate(date);
+        String key = ForecastCache.getSnapshotKey(locationSetting, day);
+        TodaySnapshot snapshot = mCache.getSnapshot(key);
+        if (snapshot == null) {
+            long generation = mCache.getGeneration();
+            Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(
+                    mOpenHelper.getReadableDatabase(),
+                    TodaySnapshot.COLUMNS,
+                    sLocationSettingWithStartDateSelection,
+                    new String[]{locationSetting, Long.toString(day)},
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                    "1");
+            try {
+                if (cursor.moveToFirst()) {
+                    snapshot = TodaySnapshot.fromCursor(cursor);
+                    mCache.putSnapshot(key, generation, snapshot);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return snapshot;
+    }
+
+    private static long findLocation(SQLiteDatabase db, String locationSetting) {
+        if (locationSetting == null) {
+            return -1;
+        }
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String getLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.app.EpochDays;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Interns the weather URIs of {@link WeatherEntry}: the list, the detail screen, the widgets
+ * and the sync all build the same few, of the preferred location and the days of its
+ * forecast.  A URI is built once per location and day and handed out again after that, and
+ * what it was built from is kept beside it, so reading the location or the date back out of it
+ * is a lookup rather than splitting its path.
+ *
+ * Uri is immutable, so the interned instances are shared freely.  A URI that wasn't built
+ * here, e.g. one that came back from an Intent, is still read the usual way.
+ */
+final class WeatherUris {
+
+    // A user has a location or two, and a few more as they try the settings
+    private static final int MAX_LOCATIONS = 4;
+    // The days kept per location, more than a forecast; a power of two
+    private static final int DAY_SLOTS = 32;
+
+    private static final LruCache<String, Location> sLocations =
+            new LruCache<String, Location>(MAX_LOCATIONS);
+    // What each interned URI was built from.  Holds the URIs of the locations above and a
+    // couple of days more, as a location's day slots are reused.
+    private static final LruCache<Uri, Parts> sParts =
+            new LruCache<Uri, Parts>(MAX_LOCATIONS * (1 + 2 * DAY_SLOTS) * 2);
+
+    private WeatherUris() {
+    }
+
+    static Uri getLocationUri(String locationSetting) {
+        return getLocation(locationSetting).mUri;
+    }
+
+    /**
+     * @param date normalized
+     */
+    static Uri getDateUri(String locationSetting, long date) {
+        return getLocation(locationSetting).mDates.get(date);
+    }
+
+    /**
+     * @param startDate normalized
+     */
+    static Uri getStartDateUri(String locationSetting, long startDate) {
+        return getLocation(locationSetting).mStartDates.get(startDate);
+    }
+
+    /**
+     * @return what the URI was built from, or null if it wasn't built here
+     */
+    static Parts getParts(Uri uri) {
+        return sParts.get(uri);
+    }
+
+    private static Location getLocation(String locationSetting) {
+        Location location = sLocations.get(locationSetting);
+        if (location == null) {
+            // Two threads may both build it, either is as good
+            location = new Location(locationSetting);
+            sLocations.put(locationSetting, location);
+        }
+        return location;
+    }
+
+    /**
+     * The location setting and the date of an interned URI.
+     */
+    static final class Parts {
+        final String mLocationSetting;
+        // Of a URI of one day, Long.MIN_VALUE otherwise
+        final long mDate;
+        // Of a URI of the days from a date on, 0 otherwise, as getStartDateFromUri reads it
+        final long mStartDate;
+
+        Parts(String locationSetting, long date, long startDate) {
+            mLocationSetting = locationSetting;
+            mDate = date;
+            mStartDate = startDate;
+        }
+
+        boolean hasDate() {
+            return mDate != Long.MIN_VALUE;
+        }
+    }
+
+    private static final class Location {
+        final String mLocationSetting;
+        final Uri mUri;
+        final DayUris mDates = new DayUris(this, false);
+        final DayUris mStartDates = new DayUris(this, true);
+
+        Location(String locationSetting) {
+            mLocationSetting = locationSetting;
+            mUri = WeatherEntry.CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+            sParts.put(mUri, new Parts(locationSetting, Long.MIN_VALUE, 0));
+        }
+    }
+
+    /*
+        The URIs of the days of a location, by date.  A day shares its slot with the days
+        DAY_SLOTS days apart from it, which a forecast doesn't reach.
+     */
+    private static final class DayUris {
+        private final Location mLocation;
+        private final boolean mStartDates;
+        private final Entry[] mEntries = new Entry[DAY_SLOTS];
+
+        DayUris(Location location, boolean startDates) {
+            mLocation = location;
+            mStartDates = startDates;
+        }
+
+        Uri get(long date) {
+            int slot = (int) (date / EpochDays.DAY_IN_MILLIS) & (DAY_SLOTS - 1);
+            Entry entry = mEntries[slot];
+            if (entry == null || entry.date != date) {
+                Uri.Builder builder = mLocation.mUri.buildUpon();
+                String dateString = Long.toString(date);
+                if (mStartDates) {
+                    builder.appendQueryParameter(WeatherEntry.COLUMN_DATE, dateString);
+                } else {
+                    builder.appendPath(dateString);
+                }
+                Uri uri = builder.build();
+                sParts.put(uri, new Parts(mLocation.mLocationSetting,
+                        mStartDates ? Long.MIN_VALUE : date, mStartDates ? date : 0));
+                // Immutable, so another thread sees it whole or not at all
+                entry = new Entry(date, uri);
+                mEntries[slot] = entry;
+            }
+            return entry.uri;
+        }
+
+        private static final class Entry {
+            final long date;
+            final Uri uri;
+
+            Entry(long date, Uri uri) {
+                this.date = date;
+                this.uri = uri;
+            }
+        }
+    }
+}
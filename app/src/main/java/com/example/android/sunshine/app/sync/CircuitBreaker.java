@@ -0,0 +1,124 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Stops us hammering a server that keeps failing.  After a run of consecutive failures the
+ * circuit opens and requests are refused until a cool-down has passed.  Then a single trial
+ * request is let through: if it succeeds the circuit closes, if it fails the circuit opens
+ * again with a longer cool-down.
+ *
+ * The state outlives the sync process, it is kept in its own preferences file.
+ */
+public class CircuitBreaker {
+
+    private static final String PREFS_NAME_PREFIX = "circuit_breaker_";
+    private static final String KEY_FAILURES = "failures";
+    private static final String KEY_OPEN_UNTIL = "open_until";
+    private static final String KEY_OPEN_COUNT = "open_count";
+
+    // Consecutive failures that open the circuit
+    static final int FAILURE_THRESHOLD = 5;
+    // The first cool-down, doubled each time the circuit opens again without closing
+    static final long BASE_COOL_DOWN_MILLIS = 5 * 60 * 1000;
+    static final long MAX_COOL_DOWN_MILLIS = 2 * 60 * 60 * 1000;
+
+    private final SharedPreferences mPrefs;
+    private int mFailures;
+    private long mOpenUntil;
+    private int mOpenCount;
+    private boolean mTrialInFlight;
+
+    /**
+     * @param name names the endpoint the breaker guards, breakers of the same name share their
+     *             state
+     */
+    public CircuitBreaker(Context context, String name) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME_PREFIX + name, Context.MODE_PRIVATE);
+        mFailures = mPrefs.getInt(KEY_FAILURES, 0);
+        mOpenUntil = mPrefs.getLong(KEY_OPEN_UNTIL, 0);
+        mOpenCount = mPrefs.getInt(KEY_OPEN_COUNT, 0);
+    }
+
+    /**
+     * @return true if a request may go out now.  Once the cool-down has passed, only one caller
+     * at a time is let through until it reports back.
+     */
+    public synchronized boolean allowRequest() {
+        if (mOpenCount == 0) {
+            return true;
+        }
+        if (now() < mOpenUntil || mTrialInFlight) {
+            return false;
+        }
+        mTrialInFlight = true;
+        return true;
+    }
+
+    /**
+     * Reports a request the server answered properly.
+     */
+    public synchronized void onSuccess() {
+        mTrialInFlight = false;
+        if (mFailures != 0 || mOpenCount != 0) {
+            mFailures = 0;
+            mOpenCount = 0;
+            mOpenUntil = 0;
+            save();
+        }
+    }
+
+    /**
+     * Reports a request that failed on the server's side, an error status or a timeout.
+     */
+    public synchronized void onFailure() {
+        mFailures++;
+        if (mTrialInFlight || (mOpenCount == 0 && mFailures >= FAILURE_THRESHOLD)) {
+            mTrialInFlight = false;
+            long coolDown = Math.min(MAX_COOL_DOWN_MILLIS,
+                    BASE_COOL_DOWN_MILLIS << Math.min(mOpenCount, 16));
+            mOpenUntil = now() + coolDown;
+            mOpenCount++;
+        }
+        save();
+    }
+
+    /**
+     * Reports a request given up on before the server answered, which counts neither way but
+     * lets the next trial request through.
+     */
+    public synchronized void onAbandoned() {
+        mTrialInFlight = false;
+    }
+
+    /**
+     * @return true while requests are being refused
+     */
+    public synchronized boolean isOpen() {
+        return mOpenCount != 0 && (now() < mOpenUntil || mTrialInFlight);
+    }
+
+    /**
+     * @return when the circuit lets a trial request through, in milliseconds since the epoch, 0
+     * if the circuit is closed
+     */
+    public synchronized long getOpenUntil() {
+        return mOpenCount == 0 ? 0 : mOpenUntil;
+    }
+
+    /**
+     * The current time, overridden by tests.
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void save() {
+        mPrefs.edit()
+                .putInt(KEY_FAILURES, mFailures)
+                .putLong(KEY_OPEN_UNTIL, mOpenUntil)
+                .putInt(KEY_OPEN_COUNT, mOpenCount)
+                .apply();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.app.EpochDays;
+import com.example.android.sunshine.app.data.WeatherBatch;
+
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * The decoded result of one forecast request.  Days are kept column by column in primitive
+ * arrays rather than as one object per day, so that a long forecast (hourly data, many
+ * locations) costs a handful of arrays instead of thousands of small objects.
+ */
+public class Forecast {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The "cod" value returned by the API, HTTP_OK when the payload doesn't carry one
+    int messageCode = HttpURLConnection.HTTP_OK;
+
+    String cityName;
+    double cityLatitude;
+    double cityLongitude;
+
+    int size;
+    double[] pressure = new double[INITIAL_CAPACITY];
+    int[] humidity = new int[INITIAL_CAPACITY];
+    double[] windSpeed = new double[INITIAL_CAPACITY];
+    double[] windDirection = new double[INITIAL_CAPACITY];
+    double[] high = new double[INITIAL_CAPACITY];
+    double[] low = new double[INITIAL_CAPACITY];
+    int[] weatherId = new int[INITIAL_CAPACITY];
+    String[] description = new String[INITIAL_CAPACITY];
+
+    public int getMessageCode() {
+        return messageCode;
+    }
+
+    public String getCityName() {
+        return cityName;
+    }
+
+    public double getCityLatitude() {
+        return cityLatitude;
+    }
+
+    public double getCityLongitude() {
+        return cityLongitude;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reserves the next day slot, growing the columns if needed.
+     * @return the index of the new day
+     */
+    int addDay() {
+        if (size == weatherId.length) {
+            int capacity = size * 2;
+            pressure = Arrays.copyOf(pressure, capacity);
+            humidity = Arrays.copyOf(humidity, capacity);
+            windSpeed = Arrays.copyOf(windSpeed, capacity);
+            windDirection = Arrays.copyOf(windDirection, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            weatherId = Arrays.copyOf(weatherId, capacity);
+            description = Arrays.copyOf(description, capacity);
+        }
+        return size++;
+    }
+
+    /**
+     * Adds the days to the rows to hand to the content provider.
+     *
+     * @param locationId row id of the location this forecast belongs to
+     * @param startDay epoch day of the first entry, the following entries are one day apart
+     * @param zone time zone of the days, whose start is stored
+     */
+    public void addTo(WeatherBatch batch, long locationId, int startDay, TimeZone zone) {
+        for (int i = 0; i < size; i++) {
+            batch.add(locationId,
+                    EpochDays.toMillis(startDay + i, zone),
+                    humidity[i],
+                    pressure[i],
+                    windSpeed[i],
+                    windDirection[i],
+                    high[i],
+                    low[i],
+                    description[i],
+                    weatherId[i]);
+        }
+    }
+}
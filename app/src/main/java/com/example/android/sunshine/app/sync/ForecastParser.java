@@ -0,0 +1,316 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v4.os.OperationCanceledException;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Decodes the OpenWeatherMap daily forecast payload into a {@link Forecast}.
+ *
+ * The payload is pulled straight off the input stream one token at a time, so the response is
+ * never held as a String or as a JSONObject tree; only the ten or so fields we store per day
+ * are kept.  Devices older than Honeycomb lack {@link JsonReader} and fall back to the
+ * JSONObject based decoder.
+ */
+public class ForecastParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // Bits for the fields every day must carry
+    private static final int FIELD_PRESSURE = 1;
+    private static final int FIELD_HUMIDITY = 1 << 1;
+    private static final int FIELD_WINDSPEED = 1 << 2;
+    private static final int FIELD_WIND_DIRECTION = 1 << 3;
+    private static final int FIELD_MAX = 1 << 4;
+    private static final int FIELD_MIN = 1 << 5;
+    private static final int FIELD_DESCRIPTION = 1 << 6;
+    private static final int FIELD_WEATHER_ID = 1 << 7;
+    private static final int ALL_DAY_FIELDS = (1 << 8) - 1;
+
+    private ForecastParser() {
+    }
+
+    /**
+     * Decodes a forecast payload.  The stream is read to the end but not closed.
+     *
+     * @param in the raw (UTF-8) response body
+     * @return the decoded forecast.  If the payload only carries an error code,
+     * {@link Forecast#getMessageCode()} reports it and the forecast has no days.
+     * @throws IOException if the stream can't be read
+     * @throws JSONException if the payload isn't a valid forecast
+     */
+    public static Forecast parse(InputStream in) throws IOException, JSONException {
+        return parse(in, null);
+    }
+
+    /**
+     * Decodes a forecast payload, stopping at the next day once the sync is canceled.
+     *
+     * @param cancellation the cancellation of the sync, or null if it can't be canceled
+     * @throws OperationCanceledException if the sync was canceled
+     * @see #parse(InputStream)
+     */
+    public static Forecast parse(InputStream in, SyncCancellation cancellation)
+            throws IOException, JSONException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return parseStreaming(in, cancellation);
+        }
+        return parseTree(in, cancellation);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Forecast parseStreaming(InputStream in, SyncCancellation cancellation)
+            throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        Forecast forecast = new Forecast();
+        boolean hasCity = false;
+        boolean hasList = false;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    forecast.messageCode = reader.nextInt();
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, forecast);
+                    hasCity = true;
+                } else if (OWM_LIST.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (cancellation != null) {
+                            cancellation.throwIfCanceled();
+                        }
+                        readDay(reader, forecast);
+                    }
+                    reader.endArray();
+                    hasList = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw asJsonException(e);
+        }
+
+        // An error payload only carries the code and a message, it's up to the caller to
+        // decide what to do with it.
+        if (forecast.messageCode != HttpURLConnection.HTTP_OK) {
+            return forecast;
+        }
+        if (!hasCity || !hasList) {
+            throw new JSONException("Forecast is missing " + (hasCity ? OWM_LIST : OWM_CITY));
+        }
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        boolean hasName = false;
+        boolean hasCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+                hasName = true;
+            } else if (OWM_COORD.equals(name)) {
+                int seen = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        forecast.cityLatitude = reader.nextDouble();
+                        seen |= 1;
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        forecast.cityLongitude = reader.nextDouble();
+                        seen |= 2;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                hasCoord = seen == 3;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!hasName || !hasCoord) {
+            throw new JSONException("Incomplete " + OWM_CITY + " object");
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDay(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        int i = forecast.addDay();
+        int seen = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                forecast.pressure[i] = reader.nextDouble();
+                seen |= FIELD_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                forecast.humidity[i] = reader.nextInt();
+                seen |= FIELD_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                forecast.windSpeed[i] = reader.nextDouble();
+                seen |= FIELD_WINDSPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                forecast.windDirection[i] = reader.nextDouble();
+                seen |= FIELD_WIND_DIRECTION;
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        forecast.high[i] = reader.nextDouble();
+                        seen |= FIELD_MAX;
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        forecast.low[i] = reader.nextDouble();
+                        seen |= FIELD_MIN;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            forecast.description[i] = reader.nextString();
+                            seen |= FIELD_DESCRIPTION;
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            forecast.weatherId[i] = reader.nextInt();
+                            seen |= FIELD_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (seen != ALL_DAY_FIELDS) {
+            throw new JSONException("Incomplete forecast for day " + i);
+        }
+    }
+
+    private static JSONException asJsonException(Exception e) {
+        JSONException jsonException = new JSONException(e.getMessage());
+        jsonException.initCause(e);
+        return jsonException;
+    }
+
+    /**
+     * Pre-Honeycomb decoder, builds the JSONObject tree and copies the fields out of it.
+     */
+    private static Forecast parseTree(InputStream in, SyncCancellation cancellation)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        StringBuilder buffer = new StringBuilder();
+        char[] chunk = new char[4096];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            buffer.append(chunk, 0, read);
+        }
+
+        JSONObject forecastJson = new JSONObject(buffer.toString());
+        Forecast forecast = new Forecast();
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            forecast.messageCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (forecast.messageCode != HttpURLConnection.HTTP_OK) {
+                return forecast;
+            }
+        }
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        forecast.cityName = cityJson.getString(OWM_CITY_NAME);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        forecast.cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        forecast.cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        for (int d = 0; d < weatherArray.length(); d++) {
+            if (cancellation != null) {
+                cancellation.throwIfCanceled();
+            }
+            JSONObject dayForecast = weatherArray.getJSONObject(d);
+            int i = forecast.addDay();
+            forecast.pressure[i] = dayForecast.getDouble(OWM_PRESSURE);
+            forecast.humidity[i] = dayForecast.getInt(OWM_HUMIDITY);
+            forecast.windSpeed[i] = dayForecast.getDouble(OWM_WINDSPEED);
+            forecast.windDirection[i] = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            forecast.description[i] = weatherObject.getString(OWM_DESCRIPTION);
+            forecast.weatherId[i] = weatherObject.getInt(OWM_WEATHER_ID);
+
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            forecast.high[i] = temperatureObject.getDouble(OWM_MAX);
+            forecast.low[i] = temperatureObject.getDouble(OWM_MIN);
+        }
+        return forecast;
+    }
+}
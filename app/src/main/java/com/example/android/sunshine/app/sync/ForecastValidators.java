@@ -0,0 +1,121 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * HTTP cache validators remembered for the last forecast stored for a location setting.  They
+ * let the sync adapter make conditional requests and recognise a response it has already
+ * stored, so an unchanged forecast costs neither a database write nor a round of updates.
+ *
+ * Validators are kept in their own preferences file, keyed by location setting.
+ */
+public class ForecastValidators {
+
+    private static final String PREFS_NAME = "forecast_validators";
+
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final String KEY_BODY_HASH = "body_hash";
+
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private final String mLocationSetting;
+    private String mETag;
+    private String mLastModified;
+    private String mBodyHash;
+
+    private ForecastValidators(String locationSetting) {
+        mLocationSetting = locationSetting;
+    }
+
+    /**
+     * @param context Context used to get the SharedPreferences
+     * @param locationSetting The location string used to request updates from the server.
+     * @return the validators stored for the location, empty if there are none
+     */
+    public static ForecastValidators load(Context context, String locationSetting) {
+        SharedPreferences prefs = getPreferences(context);
+        ForecastValidators validators = new ForecastValidators(locationSetting);
+        validators.mETag = prefs.getString(key(locationSetting, KEY_ETAG), null);
+        validators.mLastModified = prefs.getString(key(locationSetting, KEY_LAST_MODIFIED), null);
+        validators.mBodyHash = prefs.getString(key(locationSetting, KEY_BODY_HASH), null);
+        return validators;
+    }
+
+    /**
+     * Adds the conditional request headers for these validators.  Must be called before the
+     * connection is opened.
+     */
+    public void addConditionalHeaders(HttpURLConnection urlConnection) {
+        if (mETag != null) {
+            urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, mETag);
+        }
+        if (mLastModified != null) {
+            urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, mLastModified);
+        }
+    }
+
+    /**
+     * @return true if a response body with the given hash is the one last stored
+     */
+    public boolean matchesBody(String bodyHash) {
+        return mBodyHash != null && mBodyHash.equals(bodyHash);
+    }
+
+    /**
+     * Remembers the validators of a fetched forecast once it has been stored.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param result the fetch the stored forecast came from
+     */
+    public void save(Context context, WeatherSource.Result result) {
+        mETag = result.getETag();
+        mLastModified = result.getLastModified();
+        mBodyHash = result.getBodyHash();
+        getPreferences(context).edit()
+                .putString(key(mLocationSetting, KEY_ETAG), mETag)
+                .putString(key(mLocationSetting, KEY_LAST_MODIFIED), mLastModified)
+                .putString(key(mLocationSetting, KEY_BODY_HASH), mBodyHash)
+                .apply();
+    }
+
+    /**
+     * @return a new digest for hashing response bodies, or null if the platform lacks it
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the printable hash of everything fed to the digest, null for a null digest
+     */
+    public static String hash(MessageDigest digest) {
+        if (digest == null) {
+            return null;
+        }
+        return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String key(String locationSetting, String name) {
+        return locationSetting + '/' + name;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream and the time spent waiting for them.  Wrapped around a
+ * response, it tells the time spent reading the body from the time spent waiting for the
+ * server to answer.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private long mBytes;
+    private long mReadNanos;
+
+    MeteredInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        mReadNanos += System.nanoTime() - start;
+        if (b != -1) {
+            mBytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(buffer, offset, count);
+        mReadNanos += System.nanoTime() - start;
+        if (read > 0) {
+            mBytes += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(byteCount);
+        mReadNanos += System.nanoTime() - start;
+        mBytes += skipped;
+        return skipped;
+    }
+
+    /**
+     * @return the number of bytes read or skipped so far
+     */
+    long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return the time spent in the underlying stream so far, in milliseconds
+     */
+    long getReadMillis() {
+        return mReadNanos / 1000000;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.android.sunshine.app.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches the forecasts of several locations at once on a small, bounded pool of threads, so
+ * the time a sync takes follows the slowest request rather than the number of locations.
+ * Decoding happens on the same threads as the fetch, once the response is read.
+ */
+public class MultiLocationSync {
+
+    // Keeps us a polite client of the API and within the connection pool of HttpURLConnection
+    static final int DEFAULT_MAX_CONCURRENT_FETCHES = 4;
+
+    private final WeatherSource mSource;
+    private final int mMaxConcurrentFetches;
+
+    public MultiLocationSync(WeatherSource source) {
+        this(source, DEFAULT_MAX_CONCURRENT_FETCHES);
+    }
+
+    public MultiLocationSync(WeatherSource source, int maxConcurrentFetches) {
+        mSource = source;
+        mMaxConcurrentFetches = maxConcurrentFetches;
+    }
+
+    /**
+     * Fetches every location and waits for all of them.  A single location is fetched on the
+     * calling thread.
+     *
+     * @param locationSettings the locations to fetch
+     * @param validators the validators to send for each location, a missing or null entry asks
+     *                   for a full forecast
+     * @param cancellation the cancellation of the sync, or null.  Fetches not started by the
+     *                     time it is canceled end with {@link WeatherSource.Result#STATUS_CANCELED}
+     *                     without going out.
+     * @return one result per location, in the order of locationSettings
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public List<WeatherSource.Result> fetchAll(List<String> locationSettings,
+                                                 Map<String, ForecastValidators> validators,
+                                                 final SyncCancellation cancellation)
+            throws InterruptedException {
+        List<WeatherSource.Result> results =
+                new ArrayList<WeatherSource.Result>(locationSettings.size());
+        if (locationSettings.size() == 1) {
+            String locationSetting = locationSettings.get(0);
+            results.add(mSource.fetch(locationSetting, validators.get(locationSetting),
+                    cancellation));
+            return results;
+        }
+
+        List<Callable<WeatherSource.Result>> tasks =
+                new ArrayList<Callable<WeatherSource.Result>>(locationSettings.size());
+        for (final String locationSetting : locationSettings) {
+            final ForecastValidators locationValidators = validators.get(locationSetting);
+            tasks.add(new Callable<WeatherSource.Result>() {
+                @Override
+                public WeatherSource.Result call() {
+                    if (cancellation != null && cancellation.isCanceled()) {
+                        WeatherSource.Result result = new WeatherSource.Result(locationSetting);
+                        result.mStatus = WeatherSource.Result.STATUS_CANCELED;
+                        return result;
+                    }
+                    return mSource.fetch(locationSetting, locationValidators, cancellation);
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(mMaxConcurrentFetches, locationSettings.size()));
+        try {
+            for (Future<WeatherSource.Result> future : executor.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // fetch() reports its own failures, anything else is a bug
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+}
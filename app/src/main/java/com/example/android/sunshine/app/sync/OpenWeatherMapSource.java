@@ -0,0 +1,196 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.security.MessageDigest;
+
+/**
+ * The {@link WeatherSource} backed by OpenWeatherMap's daily forecast API.  It holds no
+ * per-request state, so one instance can serve several sync threads at once.
+ */
+public class OpenWeatherMapSource implements WeatherSource {
+
+    private static final String LOG_TAG = OpenWeatherMapSource.class.getSimpleName();
+
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    private static final int NUM_DAYS = 14;
+
+    // A stalled server counts as a failed one
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int BODY_BUFFER_SIZE = 8 * 1024;
+
+    private final String mBaseUrl;
+
+    public OpenWeatherMapSource() {
+        this(FORECAST_BASE_URL);
+    }
+
+    /**
+     * @param baseUrl the forecast endpoint, query parameters are appended to it, e.g. the
+     *                address of a stand-in server
+     */
+    public OpenWeatherMapSource(String baseUrl) {
+        mBaseUrl = baseUrl;
+    }
+
+    @Override
+    public Result fetch(String locationSetting, ForecastValidators validators,
+                        SyncCancellation cancellation) {
+        Result result = new Result(locationSetting);
+
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        Runnable abort = null;
+        try {
+            Uri builtUri = Uri.parse(mBaseUrl).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM, locationSetting)
+                    .appendQueryParameter(FORMAT_PARAM, FORMAT)
+                    .appendQueryParameter(UNITS_PARAM, UNITS)
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                    .build();
+
+            URL url = new URL(builtUri.toString());
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (cancellation != null) {
+                // Tearing down the connection unblocks whatever read is waiting on it
+                final HttpURLConnection connection = urlConnection;
+                abort = new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.disconnect();
+                    }
+                };
+                cancellation.addListener(abort);
+                // Disconnecting before connecting does nothing, don't start once canceled
+                cancellation.throwIfCanceled();
+            }
+            if (validators != null) {
+                validators.addConditionalHeaders(urlConnection);
+            }
+            // connect() covers the DNS lookup and the TCP connection, the response code comes
+            // with the first byte of the response
+            long start = System.nanoTime();
+            urlConnection.connect();
+            long connected = System.nanoTime();
+            int responseCode = urlConnection.getResponseCode();
+            result.mHttpCode = responseCode;
+            result.mConnectMillis = (connected - start) / 1000000;
+            result.mFirstByteMillis = (System.nanoTime() - connected) / 1000000;
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                result.mStatus = Result.STATUS_NOT_MODIFIED;
+                return result;
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                // Nothing to do.
+                result.mStatus = Result.STATUS_SERVER_DOWN;
+                return result;
+            }
+
+            // The body is read whole and hashed before anything decodes it, so a response we
+            // already stored is recognised without parsing it.  An empty body surfaces as an
+            // IOException from the parser.
+            MeteredInputStream meteredStream = new MeteredInputStream(inputStream);
+            byte[] body = readBody(meteredStream, urlConnection.getContentLength());
+            result.mBytes = meteredStream.getBytes();
+            result.mReadMillis = meteredStream.getReadMillis();
+            MessageDigest digest = ForecastValidators.newDigest();
+            if (digest != null) {
+                digest.update(body);
+            }
+            result.mBodyHash = ForecastValidators.hash(digest);
+
+            if (validators != null && validators.matchesBody(result.mBodyHash)) {
+                result.mStatus = Result.STATUS_UNCHANGED;
+                return result;
+            }
+            long parseStart = System.nanoTime();
+            Forecast forecast;
+            try {
+                forecast = ForecastParser.parse(new ByteArrayInputStream(body), cancellation);
+            } finally {
+                result.mParseMillis = (System.nanoTime() - parseStart) / 1000000;
+            }
+            result.mForecast = forecast;
+            result.mETag = urlConnection.getHeaderField(ForecastValidators.HEADER_ETAG);
+            result.mLastModified =
+                    urlConnection.getHeaderField(ForecastValidators.HEADER_LAST_MODIFIED);
+            result.mStatus = Result.STATUS_FORECAST;
+        } catch (IOException e) {
+            if (cancellation != null && cancellation.isCanceled()) {
+                // We pulled the connection from under ourselves
+                result.mStatus = Result.STATUS_CANCELED;
+                return result;
+            }
+            Log.e(LOG_TAG, "Error ", e);
+            // A timeout is the server's doing, anything else may well be our connection
+            result.mTimedOut = e instanceof SocketTimeoutException;
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.mStatus = Result.STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.mStatus = Result.STATUS_SERVER_INVALID;
+        } catch (OperationCanceledException e) {
+            result.mStatus = Result.STATUS_CANCELED;
+        } finally {
+            if (abort != null) {
+                cancellation.removeListener(abort);
+            }
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param length the length the server declared for the body, -1 if it didn't
+     * @return everything left in the stream
+     */
+    private static byte[] readBody(InputStream in, int length) throws IOException {
+        ByteArrayOutputStream body =
+                new ByteArrayOutputStream(length > 0 ? length : BODY_BUFFER_SIZE);
+        byte[] buffer = new byte[BODY_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+}
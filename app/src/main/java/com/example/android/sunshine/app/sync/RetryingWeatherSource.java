@@ -0,0 +1,124 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+/**
+ * Retries the fetches of another {@link WeatherSource} that failed on the server's side, after
+ * a capped exponential backoff with full jitter, so a brief hiccup doesn't cost a whole sync
+ * period.  Failures feed a {@link CircuitBreaker}: while it is open no request goes out at
+ * all and the fetch ends with {@link Result#STATUS_CIRCUIT_OPEN}.
+ */
+public class RetryingWeatherSource implements WeatherSource {
+
+    private static final String LOG_TAG = RetryingWeatherSource.class.getSimpleName();
+
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 10 * 1000;
+
+    // Too Many Requests, which HttpURLConnection has no constant for
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final WeatherSource mSource;
+    private final CircuitBreaker mCircuitBreaker;
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom = new Random();
+
+    public RetryingWeatherSource(WeatherSource source, CircuitBreaker circuitBreaker) {
+        this(source, circuitBreaker, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS,
+                DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param maxAttempts the most requests made for one fetch, the first one included
+     * @param baseDelayMillis the cap of the delay before the first retry, doubled for each
+     *                        retry after it
+     * @param maxDelayMillis the cap no delay goes over
+     */
+    public RetryingWeatherSource(WeatherSource source, CircuitBreaker circuitBreaker,
+                                 int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        mSource = source;
+        mCircuitBreaker = circuitBreaker;
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public Result fetch(String locationSetting, ForecastValidators validators,
+                        SyncCancellation cancellation) {
+        Result result = null;
+        for (int attempt = 0; attempt < mMaxAttempts; attempt++) {
+            if (!mCircuitBreaker.allowRequest()) {
+                if (result == null) {
+                    result = new Result(locationSetting);
+                    result.mStatus = Result.STATUS_CIRCUIT_OPEN;
+                }
+                return result;
+            }
+
+            result = mSource.fetch(locationSetting, validators, cancellation);
+            result.mAttempts = attempt + 1;
+            if (result.getStatus() == Result.STATUS_CANCELED) {
+                // Says nothing about the server either way
+                mCircuitBreaker.onAbandoned();
+                return result;
+            }
+            if (result.getStatus() == Result.STATUS_SERVER_DOWN && result.getHttpCode() == 0
+                    && !result.isTimedOut()) {
+                // The connection couldn't be made, which says nothing about the server
+                mCircuitBreaker.onAbandoned();
+                return result;
+            }
+            if (!isServerFailure(result)) {
+                mCircuitBreaker.onSuccess();
+                return result;
+            }
+            mCircuitBreaker.onFailure();
+
+            if (attempt + 1 < mMaxAttempts) {
+                // Full jitter: anywhere between nothing and the capped exponential delay, so
+                // clients that failed together don't all come back together
+                long cap = Math.min(mMaxDelayMillis, mBaseDelayMillis << Math.min(attempt, 16));
+                long delay = (long) (mRandom.nextDouble() * cap);
+                Log.d(LOG_TAG, "Fetch of " + locationSetting + " failed, retrying in "
+                        + delay + "ms");
+                try {
+                    if (cancellation != null) {
+                        if (!cancellation.sleep(delay)) {
+                            result.mStatus = Result.STATUS_CANCELED;
+                            return result;
+                        }
+                    } else {
+                        Thread.sleep(delay);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true for failures worth retrying and counted against the server: a timeout, a
+     * server error or too many requests.  A client error won't get better by asking again, and
+     * a connection that couldn't be made, e.g. while the device is offline, says nothing about
+     * the server.
+     */
+    static boolean isServerFailure(Result result) {
+        if (result.getStatus() != Result.STATUS_SERVER_DOWN) {
+            return false;
+        }
+        int httpCode = result.getHttpCode();
+        return result.isTimedOut()
+                || httpCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                || httpCode == HTTP_TOO_MANY_REQUESTS;
+    }
+}
@@ -8,11 +8,8 @@ import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
@@ -23,19 +20,22 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
+import android.support.v4.os.OperationCanceledException;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.EpochDays;
+import com.example.android.sunshine.app.FormatContext;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Settings;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.TodaySnapshot;
+import com.example.android.sunshine.app.data.WeatherBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
@@ -45,20 +45,16 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -68,29 +64,23 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
+    // Interval at which to sync with the weather, in seconds, before SyncScheduler adapts it.
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
-    public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    // How long each consumer of a new forecast may hold the sync
+    private static final long BROADCAST_TIMEOUT_MILLIS = 2 * 1000;
+    private static final long NOTIFICATION_TIMEOUT_MILLIS = 10 * 1000;
+    private static final long WEARABLE_TIMEOUT_MILLIS = 10 * 1000;
+    // Leaves the wearable consumer time to load the icon and send it once connected
+    private static final long WEARABLE_CONNECT_TIMEOUT_MILLIS = 5 * 1000;
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
 
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
 
     @Retention(RetentionPolicy.SOURCE)
-    @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
+    @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID, LOCATION_STATUS_SERVER_BACKOFF})
     public @interface LocationStatus {}
 
     public static final int LOCATION_STATUS_OK = 0;
@@ -98,17 +88,44 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_SERVER_INVALID = 2;
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
+    // The server kept failing, we leave it alone for a while before trying again
+    public static final int LOCATION_STATUS_SERVER_BACKOFF = 5;
 
     private static final String UPDATE_FORECAST_PATH = "/update-forecast";
     private static final String KEY_MAX_TEMP = "max_temp";
     private static final String KEY_MIN_TEMP = "min_temp";
     private static final String KEY_ICON = "icon";
 
-    private GoogleApiClient googleApiClient;
+    private static final String CIRCUIT_BREAKER_NAME = "openweathermap";
 
+    private GoogleApiClient googleApiClient;
+    private final MultiLocationSync mMultiLocationSync;
+    private final CircuitBreaker mCircuitBreaker;
+    private final SyncFanOut mFanOut = new SyncFanOut();
+    // The cancellation of the sync in progress, if any
+    private volatile SyncCancellation mCancellation;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
+        this(context, autoInitialize, new CircuitBreaker(context, CIRCUIT_BREAKER_NAME));
+    }
+
+    private SunshineSyncAdapter(Context context, boolean autoInitialize,
+                                CircuitBreaker circuitBreaker) {
+        this(context, autoInitialize,
+                new RetryingWeatherSource(new OpenWeatherMapSource(), circuitBreaker),
+                circuitBreaker);
+    }
+
+    /**
+     * @param source where to get forecasts from, e.g. a stand-in server for load tests
+     * @param circuitBreaker the breaker the source reports to, it decides when to sync again
+     *                       after the server kept failing
+     */
+    SunshineSyncAdapter(Context context, boolean autoInitialize, WeatherSource source,
+                        CircuitBreaker circuitBreaker) {
         super(context, autoInitialize);
+        mMultiLocationSync = new MultiLocationSync(source);
+        mCircuitBreaker = circuitBreaker;
         googleApiClient = new GoogleApiClient.Builder(getContext())
                 .addApi(Wearable.API)
                 .addConnectionCallbacks(this)
@@ -119,268 +136,272 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
-
+        Context context = getContext();
+        SyncCancellation cancellation = new SyncCancellation();
+        mCancellation = cancellation;
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            performSync(context, cancellation, syncResult);
+        } catch (OperationCanceledException e) {
+            Log.d(LOG_TAG, "Sync canceled");
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            mCancellation = null;
+            // The sync process may not outlive the sync, the status and the notification time
+            // go to disk before it ends
+            Settings.persist(context);
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Called by the framework when the sync is called off, on a thread of its own.  Aborts the
+     * fetches in flight and stops the sync before it writes anything more; the default
+     * implementation then interrupts the sync thread, which rolls back an insert under way.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+    @Override
+    public void onSyncCanceled() {
+        SyncCancellation cancellation = mCancellation;
+        if (cancellation != null) {
+            cancellation.cancel();
+        }
+        super.onSyncCanceled();
+    }
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+    private void performSync(Context context, SyncCancellation cancellation,
+                             SyncResult syncResult) {
+        SyncMetrics metrics = new SyncMetrics();
+        String preferredLocation = Utility.getPreferredLocation(context);
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+        List<String> locationSettings;
+        if (Utility.isSyncingAllLocations(context)) {
+            locationSettings = getTrackedLocations(preferredLocation);
+        } else {
+            locationSettings = Collections.singletonList(preferredLocation);
+        }
 
-        final String OWM_MESSAGE_CODE = "cod";
+        // Only ask the server whether a forecast changed if we still hold the one we
+        // fetched last time, otherwise the validators could leave us with nothing to show.
+        Map<String, ForecastValidators> validators = new HashMap<String, ForecastValidators>();
+        Map<String, ForecastValidators> conditionalValidators =
+                new HashMap<String, ForecastValidators>();
+        for (String locationSetting : locationSettings) {
+            ForecastValidators locationValidators =
+                    ForecastValidators.load(context, locationSetting);
+            validators.put(locationSetting, locationValidators);
+            if (hasForecastForToday(locationSetting)) {
+                conditionalValidators.put(locationSetting, locationValidators);
+            }
+        }
 
+        List<WeatherSource.Result> results;
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            results = mMultiLocationSync.fetchAll(locationSettings, conditionalValidators,
+                    cancellation);
+        } catch (InterruptedException e) {
+            Log.d(LOG_TAG, "Sync interrupted");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Whatever was fetched is incomplete, leave the stored forecasts and status alone
+        cancellation.throwIfCanceled();
+        for (WeatherSource.Result result : results) {
+            metrics.addFetch(result);
+        }
+        storeForecasts(results, validators, preferredLocation, metrics, cancellation);
+        metrics.save(context);
+
+        // Don't let the framework bring us back before the server had its rest
+        long openUntil = mCircuitBreaker.getOpenUntil();
+        if (openUntil > System.currentTimeMillis()) {
+            Log.d(LOG_TAG, "Server failing, next sync no sooner than " + openUntil);
+            syncResult.delayUntil = openUntil / 1000;
+        }
+    }
 
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+    /**
+     * Take the fetched forecasts and store them in the database in a single transaction, then
+     * let everybody interested in the weather know about it.  The location status reflects the
+     * fetch of the preferred location.
+     */
+    private void storeForecasts(List<WeatherSource.Result> results,
+                                Map<String, ForecastValidators> validators,
+                                String preferredLocation,
+                                SyncMetrics metrics,
+                                SyncCancellation cancellation) {
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        TimeZone zone = TimeZone.getDefault();
+        int startDay = EpochDays.fromMillis(System.currentTimeMillis(), zone);
+
+        WeatherBatch batch = new WeatherBatch();
+        List<WeatherSource.Result> stored = new ArrayList<WeatherSource.Result>();
+        @LocationStatus int preferredStatus = LOCATION_STATUS_UNKNOWN;
+
+        for (WeatherSource.Result result : results) {
+            @LocationStatus int status;
+            switch (result.getStatus()) {
+                case WeatherSource.Result.STATUS_FORECAST:
+                    status = getForecastStatus(result.getForecast());
+                    break;
+                case WeatherSource.Result.STATUS_NOT_MODIFIED:
+                case WeatherSource.Result.STATUS_UNCHANGED:
+                    status = LOCATION_STATUS_OK;
+                    break;
+                case WeatherSource.Result.STATUS_SERVER_INVALID:
+                    status = LOCATION_STATUS_SERVER_INVALID;
+                    break;
+                case WeatherSource.Result.STATUS_CIRCUIT_OPEN:
+                    status = LOCATION_STATUS_SERVER_BACKOFF;
+                    break;
+                default:
+                    status = mCircuitBreaker.isOpen()
+                            ? LOCATION_STATUS_SERVER_BACKOFF : LOCATION_STATUS_SERVER_DOWN;
             }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+            if (status == LOCATION_STATUS_OK && result.getForecast() != null) {
+                Forecast forecast = result.getForecast();
+                // The provider stores the location along with the rows, unless it has it
+                long locationId = batch.addLocation(result.getLocationSetting(),
+                        forecast.getCityName(),
+                        forecast.getCityLatitude(),
+                        forecast.getCityLongitude());
+                forecast.addTo(batch, locationId, startDay, zone);
+                stored.add(result);
+            }
+            if (result.getLocationSetting().equals(preferredLocation)) {
+                preferredStatus = status;
+            }
+        }
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+        // add to database
+        int changed = 0;
+        cancellation.throwIfCanceled();
+        if ( batch.size() > 0 ) {
+            // delete old data so we don't build up an endless history
+            batch.setDeleteUpTo(EpochDays.toMillis(startDay - 1, zone));
+
+            // The locations, the days whose values changed and the deletion go in one
+            // transaction, the provider tells us how many days it wrote
+            long insertStart = System.nanoTime();
+            changed = batch.insert(getContext().getContentResolver());
+            metrics.add(SyncMetrics.PHASE_BULK_INSERT,
+                    (System.nanoTime() - insertStart) / 1000000, 0, changed);
+
+            for (WeatherSource.Result result : stored) {
+                validators.get(result.getLocationSetting()).save(getContext(), result);
+            }
+        }
+        if ( changed > 0 && !cancellation.isCanceled() ) {
+            metrics.addFanOut(fanOut());
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + results.size() + " Locations, "
+                + batch.size() + " Received, " + changed + " Changed");
+        setLocationStatus(getContext(), preferredStatus);
+        SyncScheduler.onSyncComplete(getContext(), preferredStatus == LOCATION_STATUS_OK,
+                batch.size(), changed);
+    }
 
-                ContentValues weatherValues = new ContentValues();
+    /**
+     * @return the location status matching the message code of a decoded forecast
+     */
+    private static @LocationStatus int getForecastStatus(Forecast forecast) {
+        // do we have an error?
+        switch (forecast.getMessageCode()) {
+            case HttpURLConnection.HTTP_OK:
+                return LOCATION_STATUS_OK;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return LOCATION_STATUS_INVALID;
+            default:
+                return LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+    /**
+     * @return the preferred location followed by every other location stored in the database
+     */
+    private List<String> getTrackedLocations(String preferredLocation) {
+        List<String> locationSettings = new ArrayList<String>();
+        locationSettings.add(preferredLocation);
 
-                cVVector.add(weatherValues);
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                String locationSetting = cursor.getString(0);
+                if (!locationSetting.equals(preferredLocation)) {
+                    locationSettings.add(locationSetting);
+                }
             }
+            cursor.close();
+        }
+        return locationSettings;
+    }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+    /**
+     * @return true if the database holds today's forecast for the location
+     */
+    private boolean hasForecastForToday(String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationWithDate(locationSetting, System.currentTimeMillis());
+        Cursor cursor = getContext().getContentResolver().query(weatherUri,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE}, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
+    }
 
+    /**
+     * Let the widgets, Muzei, the notification and the wearable know about the new forecast, all
+     * at once, each within its own time limit.
+     *
+     * @return how each of them fared, empty if the sync was interrupted
+     */
+    private List<SyncFanOut.Outcome> fanOut() {
+        List<SyncFanOut.Consumer> consumers = new ArrayList<SyncFanOut.Consumer>(4);
+        consumers.add(new SyncFanOut.Consumer("widgets", BROADCAST_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
                 updateWidgets();
+            }
+        }));
+        consumers.add(new SyncFanOut.Consumer("muzei", BROADCAST_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
                 updateMuzei();
-                notifyWeather();
+            }
+        }));
+        consumers.add(new SyncFanOut.Consumer("notification", NOTIFICATION_TIMEOUT_MILLIS,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        notifyWeather();
+                    }
+                }));
+        consumers.add(new SyncFanOut.Consumer("wearable", WEARABLE_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
                 updateWearable();
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }));
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        try {
+            return mFanOut.run(consumers);
+        } catch (InterruptedException e) {
+            Log.d(LOG_TAG, "Sync interrupted while updating consumers");
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
         }
     }
 
@@ -405,30 +426,27 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        Settings settings = Settings.get(context);
 
-        if ( displayNotifications ) {
+        if ( settings.areNotificationsEnabled() ) {
 
-            String lastNotificationKey = context.getString(R.string.pref_last_notification);
-            long lastSync = prefs.getLong(lastNotificationKey, 0);
+            long lastSync = settings.getLastNotification();
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
+                String locationQuery = settings.getLocationSetting();
 
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                long now = System.currentTimeMillis();
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+                // the provider keeps today's weather at hand, no need for a cursor
+                TodaySnapshot today = TodaySnapshot.query(context.getContentResolver(),
+                        locationQuery, now);
 
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != null && today.isForDay(now)) {
+                    int weatherId = today.getWeatherId();
+                    double high = today.getMaxTemp();
+                    double low = today.getMinTemp();
+                    String desc = today.getShortDesc();
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -455,17 +473,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                                 .error(artResourceId)
                                 .fitCenter()
                                 .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
+                    } catch (InterruptedException e) {
+                        // The fan-out gave up on us, the sync may be over: leave everything be
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (ExecutionException e) {
                         Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
                         largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
                     }
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
+                    FormatContext format = FormatContext.get(context);
                     String contentText = String.format(context.getString(R.string.format_notification),
                             desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
+                            format.formatTemperature(high),
+                            format.formatTemperature(low));
 
                     // NotificationCompatBuilder is a very convenient way to build backward-compatible
                     // notifications.  Just throw in some data.
@@ -496,22 +519,23 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
                     NotificationManager mNotificationManager =
                             (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
                     // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
                     mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
 
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
+                    //refreshing last sync, written to disk at the end of the sync
+                    Settings.setLastNotification(context, System.currentTimeMillis());
                 }
-                cursor.close();
             }
         }
     }
 
     private void updateWearable() {
         if (!googleApiClient.isConnected()) {
-            ConnectionResult connectionResult = googleApiClient.blockingConnect(30, TimeUnit.SECONDS);
+            ConnectionResult connectionResult = googleApiClient.blockingConnect(
+                    WEARABLE_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
             if (!connectionResult.isSuccess()) {
                 Log.e(LOG_TAG, "Failed to connect to GoogleApiClient.");
                 return;
@@ -519,16 +543,14 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
 
         String locationQuery = Utility.getPreferredLocation(getContext());
-        Uri weatherUri = WeatherContract.WeatherEntry
-                .buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        Cursor cursor = getContext().getContentResolver()
-                .query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+        long now = System.currentTimeMillis();
+        TodaySnapshot today = TodaySnapshot.query(getContext().getContentResolver(),
+                locationQuery, now);
 
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
+        if (today != null && today.isForDay(now)) {
+            int weatherId = today.getWeatherId();
+            double high = today.getMaxTemp();
+            double low = today.getMinTemp();
 
             Resources resources = getContext().getResources();
             int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
@@ -545,7 +567,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                         .error(artResourceId)
                         .fitCenter()
                         .into(smallIconWidth, smallIconHeight).get();
-            } catch (InterruptedException | ExecutionException e) {
+            } catch (InterruptedException e) {
+                // The fan-out gave up on us, don't send anything after it
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
                 Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
                 icon = BitmapFactory.decodeResource(resources, artResourceId);
             }
@@ -557,12 +583,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             dataMap.getDataMap().putInt(KEY_MIN_TEMP, (int) low);
 
             PutDataRequest request = dataMap.asPutDataRequest();
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
             Wearable.DataApi.putDataItem(googleApiClient, request);
         }
-
-        if (cursor != null && !cursor.isClosed()) {
-            cursor.close();
-        }
     }
 
     /* From https://developer.android.com/training/wearables/data-layer/assets.html */
@@ -572,56 +597,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         return Asset.createFromBytes(byteStream.toByteArray());
     }
 
-    /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
-
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -653,6 +628,17 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to call off the sync in progress, whose results went stale, and sync again
+     * immediately.
+     * @param context The context used to access the account service
+     */
+    public static void restartSync(Context context) {
+        ContentResolver.cancelSync(getSyncAccount(context),
+                context.getString(R.string.content_authority));
+        syncImmediately(context);
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -696,7 +682,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         /*
          * Since we've created an account
          */
-        SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        SyncScheduler.scheduleInitialSync(context);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -714,16 +700,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     /**
-     * Sets the location status into shared preference.  This function should not be called from
-     * the UI thread because it uses commit to write to the shared preferences.
-     * @param c Context to get the PreferenceManager from.
+     * Sets the location status into shared preference.  It is applied, the sync writes it to
+     * disk when it ends.
+     * @param c Context to get the settings from.
      * @param locationStatus The IntDef value to set
      */
     static private void setLocationStatus(Context c, @LocationStatus int locationStatus){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor spe = sp.edit();
-        spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
-        spe.commit();
+        Settings.setLocationStatus(c, locationStatus);
     }
 
     @Override
@@ -0,0 +1,86 @@
+package com.example.android.sunshine.app.sync;
+
+import android.support.v4.os.OperationCanceledException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets a sync be called off while it runs.  Fetches register a listener that aborts their
+ * connection, decoders check {@link #throwIfCanceled()} between records and waits return
+ * early, so a canceled sync stops within moments rather than running to the end for nothing.
+ *
+ * Unlike {@link android.support.v4.os.CancellationSignal} it takes any number of listeners, as
+ * the fetches of a sync run side by side.
+ */
+public class SyncCancellation {
+
+    private final List<Runnable> mListeners = new ArrayList<Runnable>();
+    private boolean mCanceled;
+
+    /**
+     * Cancels the sync: runs every listener and wakes up every wait.  Does nothing the second
+     * time.
+     */
+    public void cancel() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            listeners = new ArrayList<Runnable>(mListeners);
+            mListeners.clear();
+            notifyAll();
+        }
+        // Outside the lock, a listener may block for a while tearing down a connection
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * @throws OperationCanceledException if the sync was canceled
+     */
+    public void throwIfCanceled() {
+        if (isCanceled()) {
+            throw new OperationCanceledException();
+        }
+    }
+
+    /**
+     * Runs the listener when the sync is canceled, or right away if it already is.
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!mCanceled) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    public synchronized void removeListener(Runnable listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Waits for the given time, or until the sync is canceled.
+     *
+     * @return true if the whole time went by, false if the sync was canceled
+     */
+    public synchronized boolean sleep(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining = millis;
+        while (!mCanceled && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return !mCanceled;
+    }
+}
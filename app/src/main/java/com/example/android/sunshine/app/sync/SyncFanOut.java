@@ -0,0 +1,156 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets everybody interested in a new forecast know about it at the same time.  Each consumer
+ * runs on its own thread and gets its own time limit, so a slow one (a stalled Wear connection,
+ * a slow image download) holds the sync for its limit at most, and never delays the others.
+ * A consumer that runs over its limit is interrupted and reported as timed out.
+ */
+public class SyncFanOut {
+
+    private static final String LOG_TAG = SyncFanOut.class.getSimpleName();
+
+    // Lives as long as the sync adapter, that is the process, and is never shut down: the
+    // consumers are few and short lived, and a cached pool keeps idle threads only for a minute.
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    /**
+     * Runs the consumers concurrently and waits until each one has finished or used up its
+     * time limit.
+     *
+     * @return one outcome per consumer, in the order of consumers
+     * @throws InterruptedException if the calling thread was interrupted while waiting, the
+     *                              consumers still running are interrupted too
+     */
+    public List<Outcome> run(List<Consumer> consumers) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<Future<?>>(consumers.size());
+        final List<Outcome> outcomes = new ArrayList<Outcome>(consumers.size());
+        for (final Consumer consumer : consumers) {
+            final Outcome outcome = new Outcome(consumer.mName, consumer.mTimeoutMillis);
+            outcomes.add(outcome);
+            futures.add(mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long consumerStart = System.nanoTime();
+                    try {
+                        consumer.mRunnable.run();
+                    } finally {
+                        outcome.mLatencyMillis = (System.nanoTime() - consumerStart) / 1000000;
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (int i = 0; i < consumers.size(); i++) {
+                Consumer consumer = consumers.get(i);
+                Outcome outcome = outcomes.get(i);
+                Future<?> future = futures.get(i);
+                // Limits count from the start of the fan-out, as all consumers started together
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(consumer.mTimeoutMillis)
+                        - (System.nanoTime() - start);
+                try {
+                    future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+                    outcome.mResult = Outcome.RESULT_OK;
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    outcome.mResult = Outcome.RESULT_TIMED_OUT;
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, consumer.mName + " failed", e.getCause());
+                    outcome.mResult = Outcome.RESULT_FAILED;
+                } catch (CancellationException e) {
+                    outcome.mResult = Outcome.RESULT_TIMED_OUT;
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+
+        for (Outcome outcome : outcomes) {
+            Log.d(LOG_TAG, outcome.toString());
+        }
+        return outcomes;
+    }
+
+    /**
+     * Something to let know about a new forecast, and how long it may take.
+     */
+    public static class Consumer {
+        private final String mName;
+        private final long mTimeoutMillis;
+        private final Runnable mRunnable;
+
+        public Consumer(String name, long timeoutMillis, Runnable runnable) {
+            mName = name;
+            mTimeoutMillis = timeoutMillis;
+            mRunnable = runnable;
+        }
+    }
+
+    /**
+     * How one consumer fared.
+     */
+    public static class Outcome {
+        public static final int RESULT_OK = 0;
+        public static final int RESULT_FAILED = 1;
+        public static final int RESULT_TIMED_OUT = 2;
+
+        private final String mName;
+        private final long mTimeoutMillis;
+        // Written by the consumer's thread when it finishes
+        private volatile long mLatencyMillis;
+        private int mResult;
+
+        Outcome(String name, long timeoutMillis) {
+            mName = name;
+            mTimeoutMillis = timeoutMillis;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return how long the consumer ran, or its time limit if it ran over
+         */
+        public long getLatencyMillis() {
+            return mResult == RESULT_TIMED_OUT ? mTimeoutMillis : mLatencyMillis;
+        }
+
+        public int getResult() {
+            return mResult;
+        }
+
+        @Override
+        public String toString() {
+            String result;
+            switch (mResult) {
+                case RESULT_OK:
+                    result = "ok";
+                    break;
+                case RESULT_FAILED:
+                    result = "failed";
+                    break;
+                default:
+                    result = "timed out";
+            }
+            return mName + " " + result + " in " + getLatencyMillis() + "ms";
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncMetricEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects how long each phase of one sync took, along with the bytes it transferred and the
+ * rows it wrote, and stores the lot in the sync metric table once the sync is done.  The table
+ * keeps the most recent measurements only, {@link #summarize(Context)} turns them into
+ * percentiles per phase.
+ */
+public class SyncMetrics {
+
+    private static final String LOG_TAG = SyncMetrics.class.getSimpleName();
+
+    // Fetch phases, once per location
+    public static final String PHASE_CONNECT = "connect";
+    public static final String PHASE_FIRST_BYTE = "first_byte";
+    public static final String PHASE_BODY_READ = "body_read";
+    public static final String PHASE_PARSE = "parse";
+    // The store phase, the one transaction writing the locations and days of a sync
+    public static final String PHASE_BULK_INSERT = "bulk_insert";
+    // Followed by the name of the consumer
+    public static final String PHASE_FAN_OUT = "fan_out_";
+    // The whole sync
+    public static final String PHASE_TOTAL = "total";
+
+    private static final String[] SUMMARY_PROJECTION = new String[]{
+            SyncMetricEntry.COLUMN_PHASE,
+            SyncMetricEntry.COLUMN_DURATION
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_PHASE = 0;
+    private static final int INDEX_DURATION = 1;
+
+    private final long mSyncTime = System.currentTimeMillis();
+    private final long mStartNanos = System.nanoTime();
+    private final List<ContentValues> mValues = new ArrayList<ContentValues>();
+
+    /**
+     * Records one phase of the sync.
+     */
+    public void add(String phase, long durationMillis, long bytes, int rows) {
+        ContentValues values = new ContentValues();
+        values.put(SyncMetricEntry.COLUMN_SYNC_TIME, mSyncTime);
+        values.put(SyncMetricEntry.COLUMN_PHASE, phase);
+        values.put(SyncMetricEntry.COLUMN_DURATION, durationMillis);
+        values.put(SyncMetricEntry.COLUMN_BYTES, bytes);
+        values.put(SyncMetricEntry.COLUMN_ROWS, rows);
+        mValues.add(values);
+    }
+
+    /**
+     * Records the network phases of a fetch that got an answer from the server.
+     */
+    public void addFetch(WeatherSource.Result result) {
+        int status = result.getStatus();
+        if (status == WeatherSource.Result.STATUS_SERVER_DOWN
+                || status == WeatherSource.Result.STATUS_CIRCUIT_OPEN
+                || status == WeatherSource.Result.STATUS_CANCELED) {
+            // we don't know how far it got, or it never went out
+            return;
+        }
+        add(PHASE_CONNECT, result.getConnectMillis(), 0, 0);
+        add(PHASE_FIRST_BYTE, result.getFirstByteMillis(), 0, 0);
+        if (status != WeatherSource.Result.STATUS_NOT_MODIFIED) {
+            add(PHASE_BODY_READ, result.getReadMillis(), result.getBytes(), 0);
+        }
+        if (status != WeatherSource.Result.STATUS_NOT_MODIFIED
+                && status != WeatherSource.Result.STATUS_UNCHANGED) {
+            // A body we already stored is recognised before it is parsed
+            add(PHASE_PARSE, result.getParseMillis(), 0, 0);
+        }
+    }
+
+    /**
+     * Records the fan-out of the new forecast, one phase per consumer.
+     */
+    public void addFanOut(List<SyncFanOut.Outcome> outcomes) {
+        for (SyncFanOut.Outcome outcome : outcomes) {
+            add(PHASE_FAN_OUT + outcome.getName(), outcome.getLatencyMillis(), 0, 0);
+        }
+    }
+
+    /**
+     * Records the total time of the sync and stores every phase.  Must not be called from the
+     * UI thread.
+     */
+    public void save(Context context) {
+        add(PHASE_TOTAL, (System.nanoTime() - mStartNanos) / 1000000, 0, 0);
+        ContentValues[] values = new ContentValues[mValues.size()];
+        mValues.toArray(values);
+        try {
+            context.getContentResolver().bulkInsert(SyncMetricEntry.CONTENT_URI, values);
+        } catch (RuntimeException e) {
+            // Measurements are never worth failing a sync over
+            Log.e(LOG_TAG, "Failed to store sync metrics", e);
+        }
+    }
+
+    /**
+     * Reads the stored measurements and summarizes them per phase.  Must not be called from the
+     * UI thread.
+     *
+     * @return one summary per phase, in phase order
+     */
+    public static List<PhaseSummary> summarize(Context context) {
+        List<PhaseSummary> summaries = new ArrayList<PhaseSummary>();
+        Cursor cursor = context.getContentResolver().query(SyncMetricEntry.CONTENT_URI,
+                SUMMARY_PROJECTION,
+                null,
+                null,
+                SyncMetricEntry.COLUMN_PHASE + " ASC, " + SyncMetricEntry.COLUMN_DURATION + " ASC");
+        if (cursor == null) {
+            return summaries;
+        }
+        try {
+            String phase = null;
+            long[] durations = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext()) {
+                String rowPhase = cursor.getString(INDEX_PHASE);
+                if (!rowPhase.equals(phase)) {
+                    if (phase != null) {
+                        summaries.add(new PhaseSummary(phase, durations, count));
+                    }
+                    phase = rowPhase;
+                    count = 0;
+                }
+                durations[count++] = cursor.getLong(INDEX_DURATION);
+            }
+            if (phase != null) {
+                summaries.add(new PhaseSummary(phase, durations, count));
+            }
+        } finally {
+            cursor.close();
+        }
+        return summaries;
+    }
+
+    /**
+     * @param sorted values in ascending order
+     * @param count the number of values to consider, from the start of sorted
+     * @param percentile between 0 and 100
+     * @return the nearest-rank percentile of the values, 0 if there are none
+     */
+    static long percentile(long[] sorted, int count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * The median and 95th percentile duration of one phase.
+     */
+    public static class PhaseSummary {
+        private final String mPhase;
+        private final int mCount;
+        private final long mP50;
+        private final long mP95;
+
+        PhaseSummary(String phase, long[] sortedDurations, int count) {
+            mPhase = phase;
+            mCount = count;
+            mP50 = percentile(sortedDurations, count, 50);
+            mP95 = percentile(sortedDurations, count, 95);
+        }
+
+        public String getPhase() {
+            return mPhase;
+        }
+
+        /**
+         * @return the number of measurements of the phase
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        public long getP50Millis() {
+            return mP50;
+        }
+
+        public long getP95Millis() {
+            return mP95;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Picks the period of the periodic sync from what we know about the forecast and the device:
+ * how much the last syncs changed, the time of day, whether anybody looked at the weather
+ * recently, the charging state and the network.  The period is re-evaluated after every sync
+ * and handed to {@link SunshineSyncAdapter#configurePeriodicSync(Context, int, int)} only when
+ * it changed, since every new periodic sync request restarts the period.
+ *
+ * Each sync is recorded along with the schedule it ran under, so data freshness can be weighed
+ * against the number of wake-ups a schedule costs.
+ */
+public class SyncScheduler {
+
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    private static final String PREFS_NAME = "sync_schedule";
+    private static final String KEY_INTERVAL = "interval";
+    private static final String KEY_FLEX = "flex";
+    private static final String KEY_REASONS = "reasons";
+    private static final String KEY_CHANGE_RATE = "change_rate";
+    private static final String KEY_LAST_SYNC = "last_sync";
+    private static final String KEY_LAST_VISIBLE = "last_visible";
+    private static final String KEY_HISTORY = "history";
+
+    // All in seconds, as the sync framework wants them
+    static final int BASE_INTERVAL = SunshineSyncAdapter.SYNC_INTERVAL;
+    static final int MIN_INTERVAL = 60 * 60;
+    static final int MAX_INTERVAL = 60 * 60 * 12;
+    // Periods are rounded to this, so small swings in the inputs don't reschedule the sync
+    static final int INTERVAL_STEP = 60 * 30;
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    private static final long RECENTLY_VISIBLE_MILLIS = HOUR_IN_MILLIS * 2;
+    private static final long LONG_UNSEEN_MILLIS = HOUR_IN_MILLIS * 24;
+
+    private static final int NIGHT_START_HOUR = 23;
+    private static final int NIGHT_END_HOUR = 6;
+
+    // Weight of the latest sync in the smoothed change rate
+    private static final double CHANGE_RATE_WEIGHT = 0.5;
+    private static final double VOLATILE_CHANGE_RATE = 0.5;
+    private static final double STABLE_CHANGE_RATE = 0.1;
+
+    private static final int HISTORY_SIZE = 100;
+
+    static final int NETWORK_NONE = 0;
+    static final int NETWORK_METERED = 1;
+    static final int NETWORK_UNMETERED = 2;
+
+    // Why a schedule differs from the base period, recorded with every sync
+    static final int REASON_VOLATILE = 1;
+    static final int REASON_STABLE = 1 << 1;
+    static final int REASON_NIGHT = 1 << 2;
+    static final int REASON_VISIBLE = 1 << 3;
+    static final int REASON_UNSEEN = 1 << 4;
+    static final int REASON_CHARGING = 1 << 5;
+    static final int REASON_METERED = 1 << 6;
+    static final int REASON_OFFLINE = 1 << 7;
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Notes that the user has just seen the weather, in the app or in a widget.
+     */
+    public static void onWeatherVisible(Context context) {
+        getPreferences(context).edit()
+                .putLong(KEY_LAST_VISIBLE, System.currentTimeMillis())
+                .apply();
+    }
+
+    /**
+     * Schedules the periodic sync with the base period, for a freshly created account.
+     */
+    public static void scheduleInitialSync(Context context) {
+        apply(context, new Schedule(BASE_INTERVAL, 0));
+    }
+
+    /**
+     * Records a finished sync under the schedule it ran with, then reschedules the periodic sync
+     * if the inputs now call for a different period.  Must not be called from the UI thread.
+     *
+     * @param succeeded whether the server answered for the preferred location, a failed sync
+     *                  tells nothing about how often the forecast changes
+     * @param received the number of forecast rows received
+     * @param changed the number of forecast rows that differed from the stored ones
+     */
+    public static void onSyncComplete(Context context, boolean succeeded, int received,
+                                      int changed) {
+        SharedPreferences prefs = getPreferences(context);
+        long now = System.currentTimeMillis();
+
+        double changeRate = prefs.getFloat(KEY_CHANGE_RATE, (float) STABLE_CHANGE_RATE);
+        if (succeeded) {
+            // A 304 or a repeated body comes back with nothing received and nothing changed
+            double latest = received == 0 ? 0 : (double) changed / received;
+            changeRate = CHANGE_RATE_WEIGHT * latest + (1 - CHANGE_RATE_WEIGHT) * changeRate;
+        }
+
+        Schedule current = new Schedule(prefs.getInt(KEY_INTERVAL, BASE_INTERVAL),
+                prefs.getInt(KEY_REASONS, 0));
+        long lastSync = prefs.getLong(KEY_LAST_SYNC, 0);
+        record(prefs, new SyncRecord(now, current.interval, current.reasons, succeeded,
+                received, changed, lastSync == 0 ? -1 : now - lastSync));
+
+        prefs.edit()
+                .putFloat(KEY_CHANGE_RATE, (float) changeRate)
+                .putLong(KEY_LAST_SYNC, now)
+                .apply();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        long lastVisible = prefs.getLong(KEY_LAST_VISIBLE, 0);
+        Schedule next = computeSchedule(changeRate,
+                calendar.get(Calendar.HOUR_OF_DAY),
+                lastVisible == 0 ? Long.MAX_VALUE : now - lastVisible,
+                isCharging(context),
+                getNetworkType(context));
+
+        if (next.interval != current.interval) {
+            Log.d(LOG_TAG, "Sync every " + next.interval + "s instead of " + current.interval
+                    + "s, reasons " + Integer.toBinaryString(next.reasons));
+            apply(context, next);
+        } else if (next.reasons != current.reasons) {
+            prefs.edit().putInt(KEY_REASONS, next.reasons).apply();
+        }
+    }
+
+    /**
+     * The period the inputs call for: the base period, shortened while the forecast is volatile,
+     * someone is watching or power is cheap, and stretched at night, while nobody looks, and on
+     * metered or missing networks.
+     *
+     * @param changeRate the smoothed fraction of forecast rows changed by recent syncs
+     * @param hourOfDay the local hour, 0 to 23
+     * @param sinceVisibleMillis time since the weather was last seen
+     * @param charging whether the device is plugged in
+     * @param networkType one of the NETWORK_ constants
+     */
+    static Schedule computeSchedule(double changeRate, int hourOfDay, long sinceVisibleMillis,
+                                    boolean charging, int networkType) {
+        double interval = BASE_INTERVAL;
+        int reasons = 0;
+
+        if (changeRate >= VOLATILE_CHANGE_RATE) {
+            interval /= 2;
+            reasons |= REASON_VOLATILE;
+        } else if (changeRate < STABLE_CHANGE_RATE) {
+            interval *= 2;
+            reasons |= REASON_STABLE;
+        }
+
+        if (hourOfDay >= NIGHT_START_HOUR || hourOfDay < NIGHT_END_HOUR) {
+            interval *= 2;
+            reasons |= REASON_NIGHT;
+        }
+
+        if (sinceVisibleMillis < RECENTLY_VISIBLE_MILLIS) {
+            interval /= 2;
+            reasons |= REASON_VISIBLE;
+        } else if (sinceVisibleMillis > LONG_UNSEEN_MILLIS) {
+            interval *= 2;
+            reasons |= REASON_UNSEEN;
+        }
+
+        if (charging) {
+            interval *= 0.75;
+            reasons |= REASON_CHARGING;
+        }
+
+        switch (networkType) {
+            case NETWORK_NONE:
+                interval *= 2;
+                reasons |= REASON_OFFLINE;
+                break;
+            case NETWORK_METERED:
+                interval *= 1.5;
+                reasons |= REASON_METERED;
+                break;
+        }
+
+        int rounded = (int) Math.round(interval / INTERVAL_STEP) * INTERVAL_STEP;
+        return new Schedule(Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, rounded)), reasons);
+    }
+
+    /**
+     * @return the recorded syncs, oldest first
+     */
+    public static List<SyncRecord> getHistory(Context context) {
+        List<SyncRecord> history = new ArrayList<SyncRecord>();
+        try {
+            JSONArray records = new JSONArray(getPreferences(context).getString(KEY_HISTORY, "[]"));
+            for (int i = 0; i < records.length(); i++) {
+                history.add(SyncRecord.fromJson(records.getJSONObject(i)));
+            }
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+        }
+        return history;
+    }
+
+    private static void apply(Context context, Schedule schedule) {
+        SunshineSyncAdapter.configurePeriodicSync(context, schedule.interval, schedule.getFlex());
+        getPreferences(context).edit()
+                .putInt(KEY_INTERVAL, schedule.interval)
+                .putInt(KEY_FLEX, schedule.getFlex())
+                .putInt(KEY_REASONS, schedule.reasons)
+                .apply();
+    }
+
+    private static void record(SharedPreferences prefs, SyncRecord record) {
+        JSONArray history;
+        try {
+            history = new JSONArray(prefs.getString(KEY_HISTORY, "[]"));
+        } catch (JSONException e) {
+            history = new JSONArray();
+        }
+        try {
+            history.put(record.toJson());
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            return;
+        }
+
+        // Keep the newest records only
+        JSONArray trimmed = history;
+        if (history.length() > HISTORY_SIZE) {
+            trimmed = new JSONArray();
+            for (int i = history.length() - HISTORY_SIZE; i < history.length(); i++) {
+                trimmed.put(history.opt(i));
+            }
+        }
+        prefs.edit().putString(KEY_HISTORY, trimmed.toString()).apply();
+        Log.d(LOG_TAG, "Recorded " + record);
+    }
+
+    private static boolean isCharging(Context context) {
+        // ACTION_BATTERY_CHANGED is sticky, so this returns the last status without a receiver
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private static int getNetworkType(Context context) {
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        if (activeNetwork == null || !activeNetwork.isConnected()) {
+            return NETWORK_NONE;
+        }
+        return ConnectivityManagerCompat.isActiveNetworkMetered(cm)
+                ? NETWORK_METERED : NETWORK_UNMETERED;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * A sync period, in seconds, and the reasons it differs from the base period.
+     */
+    static class Schedule {
+        final int interval;
+        final int reasons;
+
+        Schedule(int interval, int reasons) {
+            this.interval = interval;
+            this.reasons = reasons;
+        }
+
+        int getFlex() {
+            return interval / 3;
+        }
+    }
+
+    /**
+     * One finished sync and the schedule it ran under.
+     */
+    public static class SyncRecord {
+        private static final String JSON_TIME = "time";
+        private static final String JSON_INTERVAL = "interval";
+        private static final String JSON_REASONS = "reasons";
+        private static final String JSON_SUCCEEDED = "succeeded";
+        private static final String JSON_RECEIVED = "received";
+        private static final String JSON_CHANGED = "changed";
+        private static final String JSON_SINCE_LAST = "since_last";
+
+        private final long mTime;
+        private final int mInterval;
+        private final int mReasons;
+        private final boolean mSucceeded;
+        private final int mReceived;
+        private final int mChanged;
+        private final long mSinceLastSyncMillis;
+
+        SyncRecord(long time, int interval, int reasons, boolean succeeded, int received,
+                   int changed, long sinceLastSyncMillis) {
+            mTime = time;
+            mInterval = interval;
+            mReasons = reasons;
+            mSucceeded = succeeded;
+            mReceived = received;
+            mChanged = changed;
+            mSinceLastSyncMillis = sinceLastSyncMillis;
+        }
+
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * @return the period of the schedule the sync ran under, in seconds
+         */
+        public int getInterval() {
+            return mInterval;
+        }
+
+        public int getReasons() {
+            return mReasons;
+        }
+
+        public boolean isSucceeded() {
+            return mSucceeded;
+        }
+
+        public int getReceived() {
+            return mReceived;
+        }
+
+        public int getChanged() {
+            return mChanged;
+        }
+
+        /**
+         * @return the time since the previous sync, how stale the data could have become, or -1
+         * for the first recorded sync
+         */
+        public long getSinceLastSyncMillis() {
+            return mSinceLastSyncMillis;
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put(JSON_TIME, mTime)
+                    .put(JSON_INTERVAL, mInterval)
+                    .put(JSON_REASONS, mReasons)
+                    .put(JSON_SUCCEEDED, mSucceeded)
+                    .put(JSON_RECEIVED, mReceived)
+                    .put(JSON_CHANGED, mChanged)
+                    .put(JSON_SINCE_LAST, mSinceLastSyncMillis);
+        }
+
+        static SyncRecord fromJson(JSONObject json) throws JSONException {
+            return new SyncRecord(json.getLong(JSON_TIME),
+                    json.getInt(JSON_INTERVAL),
+                    json.getInt(JSON_REASONS),
+                    json.getBoolean(JSON_SUCCEEDED),
+                    json.getInt(JSON_RECEIVED),
+                    json.getInt(JSON_CHANGED),
+                    json.getLong(JSON_SINCE_LAST));
+        }
+
+        @Override
+        public String toString() {
+            return "SyncRecord{interval=" + mInterval + "s, reasons="
+                    + Integer.toBinaryString(mReasons) + ", succeeded=" + mSucceeded
+                    + ", received=" + mReceived + ", changed=" + mChanged
+                    + ", sinceLast=" + mSinceLastSyncMillis + "ms}";
+        }
+    }
+}
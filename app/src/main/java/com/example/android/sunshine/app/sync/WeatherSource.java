@@ -0,0 +1,143 @@
+package com.example.android.sunshine.app.sync;
+
+/**
+ * Where forecasts come from.  A source fetches the forecast of one location and decodes it,
+ * and must be safe to call from several sync threads at once.
+ */
+public interface WeatherSource {
+
+    /**
+     * Fetches the forecast of a location.  Failures are reported through
+     * {@link Result#getStatus()} rather than thrown, so a batch of fetches can carry on.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @param validators the validators of the forecast already stored for the location, or null
+     *                   to ask for a full forecast
+     * @param cancellation the cancellation of the sync, or null if it can't be canceled.  Once
+     *                     canceled the fetch should give up as soon as it can, with
+     *                     {@link Result#STATUS_CANCELED}.
+     */
+    Result fetch(String locationSetting, ForecastValidators validators,
+                 SyncCancellation cancellation);
+
+    /**
+     * Outcome of fetching the forecast of one location.
+     */
+    class Result {
+        // A new forecast was decoded, see getForecast()
+        public static final int STATUS_FORECAST = 0;
+        // The server answered 304 to our conditional request
+        public static final int STATUS_NOT_MODIFIED = 1;
+        // The server sent the same body as the forecast already stored
+        public static final int STATUS_UNCHANGED = 2;
+        // The forecast couldn't be fetched
+        public static final int STATUS_SERVER_DOWN = 3;
+        // The forecast was fetched but couldn't be decoded
+        public static final int STATUS_SERVER_INVALID = 4;
+        // The server has been failing, no request was made, see CircuitBreaker
+        public static final int STATUS_CIRCUIT_OPEN = 5;
+        // The sync was canceled before the fetch was done
+        public static final int STATUS_CANCELED = 6;
+
+        private final String mLocationSetting;
+        // Filled in by the source as the fetch goes
+        int mStatus;
+        int mHttpCode;
+        boolean mTimedOut;
+        int mAttempts = 1;
+        Forecast mForecast;
+        String mBodyHash;
+        String mETag;
+        String mLastModified;
+        long mConnectMillis;
+        long mFirstByteMillis;
+        long mReadMillis;
+        long mParseMillis;
+        long mBytes;
+
+        Result(String locationSetting) {
+            mLocationSetting = locationSetting;
+        }
+
+        public String getLocationSetting() {
+            return mLocationSetting;
+        }
+
+        public int getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * @return the HTTP status of the last response, 0 if there was none
+         */
+        public int getHttpCode() {
+            return mHttpCode;
+        }
+
+        /**
+         * @return true if the server was reached but didn't answer in time
+         */
+        public boolean isTimedOut() {
+            return mTimedOut;
+        }
+
+        /**
+         * @return the number of requests made for this fetch
+         */
+        public int getAttempts() {
+            return mAttempts;
+        }
+
+        public Forecast getForecast() {
+            return mForecast;
+        }
+
+        public String getBodyHash() {
+            return mBodyHash;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * @return the time taken to look up the server and connect to it, in milliseconds
+         */
+        public long getConnectMillis() {
+            return mConnectMillis;
+        }
+
+        /**
+         * @return the time from the connection to the first byte of the response, in
+         * milliseconds
+         */
+        public long getFirstByteMillis() {
+            return mFirstByteMillis;
+        }
+
+        /**
+         * @return the time spent waiting for the body of the response, in milliseconds
+         */
+        public long getReadMillis() {
+            return mReadMillis;
+        }
+
+        /**
+         * @return the time spent decoding the body of the response, in milliseconds
+         */
+        public long getParseMillis() {
+            return mParseMillis;
+        }
+
+        /**
+         * @return the size of the body of the response, in bytes
+         */
+        public long getBytes() {
+            return mBytes;
+        }
+    }
+}
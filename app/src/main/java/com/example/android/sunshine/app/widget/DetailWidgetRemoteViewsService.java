@@ -14,8 +14,10 @@ import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.FormatContext;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastPager;
 import com.example.android.sunshine.app.data.WeatherContract;
 
 import java.util.concurrent.ExecutionException;
@@ -45,7 +47,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            // Reads the forecast a page at a time, only the pages around the last row shown
+            // are held
+            private ForecastPager pager = null;
 
             @Override
             public void onCreate() {
@@ -54,8 +58,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
+                if (pager == null) {
+                    pager = ForecastPager.newSynchronousPager(getContentResolver(),
+                            FORECAST_COLUMNS);
                 }
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
@@ -63,33 +68,32 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                pager.reset(location);
+                // The list needs its count up front
+                pager.readToEnd();
                 Binder.restoreCallingIdentity(identityToken);
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
+                if (pager != null) {
+                    pager.close();
+                    pager = null;
                 }
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return pager == null ? 0 : pager.getCount();
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                if (position == AdapterView.INVALID_POSITION || pager == null) {
+                    return null;
+                }
+                Cursor data = moveToPosition(position);
+                if (data == null) {
                     return null;
                 }
                 RemoteViews views = new RemoteViews(getPackageName(),
@@ -112,14 +116,12 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
+                FormatContext format = FormatContext.get(DetailWidgetRemoteViewsService.this);
+                String formattedDate = format.getFriendlyDayString(dateInMillis, false);
                 double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
                 double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
+                String formattedMaxTemperature = format.formatTemperature(maxTemp);
+                String formattedMinTemperature = format.formatTemperature(minTemp);
                 if (weatherArtImage != null) {
                     views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
                 } else {
@@ -144,6 +146,19 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 return views;
             }
 
+            /*
+                Runs on a binder thread, so the page of the position, if it was dropped, is read
+                on the spot.  As in onDataSetChanged, with our own identity.
+             */
+            private Cursor moveToPosition(int position) {
+                final long identityToken = Binder.clearCallingIdentity();
+                try {
+                    return pager.moveToPosition(position);
+                } finally {
+                    Binder.restoreCallingIdentity(identityToken);
+                }
+            }
+
             @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
             private void setRemoteContentDescription(RemoteViews views, String description) {
                 views.setContentDescription(R.id.widget_icon, description);
@@ -161,7 +176,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
+                Cursor data = pager == null ? null : moveToPosition(position);
+                if (data != null)
                     return data.getLong(INDEX_WEATHER_ID);
                 return position;
             }
@@ -23,6 +23,7 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncScheduler;
 
 /**
  * Provider for a horizontally expandable widget showing today's weather.
@@ -40,6 +41,8 @@ public class TodayWidgetProvider extends AppWidgetProvider {
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
+        // The user is resizing the widget, so they're looking at it
+        SyncScheduler.onWeatherVisible(context);
         context.startService(new Intent(context, TodayWidgetIntentService.class));
     }
 
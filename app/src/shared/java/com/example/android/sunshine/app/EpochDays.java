@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic on epoch days, the number of days since January 1st 1970, of the calendar of
+ * a time zone.  It does what android.text.format.Time did for us with plain integer arithmetic
+ * and TimeZone.getOffset, so nothing is allocated and it runs on the phone and the watch alike.
+ *
+ * The days and months follow the proleptic Gregorian calendar, see
+ * http://howardhinnant.github.io/date_algorithms.html
+ */
+public final class EpochDays {
+
+    public static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // The Julian day of January 1st 1970, as in android.text.format.Time
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    // Days from March 1st of year 0 to January 1st 1970
+    private static final int DAYS_0000_TO_1970 = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    private EpochDays() {
+    }
+
+    /**
+     * @return the epoch day of the instant in the time zone
+     */
+    public static int fromMillis(long millis, TimeZone zone) {
+        return (int) floorDiv(millis + zone.getOffset(millis), DAY_IN_MILLIS);
+    }
+
+    /**
+     * @return the first instant of the epoch day in the time zone: its midnight, or the end of
+     * the transition when the clocks skip midnight
+     */
+    public static long toMillis(int epochDay, TimeZone zone) {
+        long localMidnight = epochDay * DAY_IN_MILLIS;
+        // The offsets on either side of any transition around that midnight
+        int offsetBefore = zone.getOffset(localMidnight - DAY_IN_MILLIS);
+        int offsetAfter = zone.getOffset(localMidnight + DAY_IN_MILLIS);
+        long before = localMidnight - offsetBefore;
+        long after = localMidnight - offsetAfter;
+        boolean beforeValid = zone.getOffset(before) == offsetBefore;
+        boolean afterValid = zone.getOffset(after) == offsetAfter;
+        if (beforeValid && afterValid) {
+            // Midnight came twice
+            return Math.min(before, after);
+        } else if (beforeValid) {
+            return before;
+        } else if (afterValid) {
+            return after;
+        }
+        // The clocks skipped midnight, the day starts when they did
+        return Math.max(before, after);
+    }
+
+    /**
+     * @return the start of the day of the instant in the time zone, in milliseconds
+     */
+    public static long startOfDay(long millis, TimeZone zone) {
+        return toMillis(fromMillis(millis, zone), zone);
+    }
+
+    public static int toJulianDay(int epochDay) {
+        return epochDay + EPOCH_JULIAN_DAY;
+    }
+
+    public static int fromJulianDay(int julianDay) {
+        return julianDay - EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * @return the day of the week, from 0 for Monday to 6 for Sunday
+     */
+    public static int getDayOfWeek(int epochDay) {
+        // January 1st 1970 was a Thursday
+        return floorMod(epochDay + 3, 7);
+    }
+
+    /**
+     * @return the epoch day of the Monday of the week of the day
+     */
+    public static int getWeekStart(int epochDay) {
+        return epochDay - getDayOfWeek(epochDay);
+    }
+
+    /**
+     * @return the day of the month, from 1
+     */
+    public static int getDayOfMonth(int epochDay) {
+        int dayOfYear = getDayOfMarchYear(epochDay);
+        int marchMonth = (5 * dayOfYear + 2) / 153;
+        return dayOfYear - (153 * marchMonth + 2) / 5 + 1;
+    }
+
+    /**
+     * @return the month, from 1 for January to 12
+     */
+    public static int getMonth(int epochDay) {
+        int marchMonth = (5 * getDayOfMarchYear(epochDay) + 2) / 153;
+        return marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+    }
+
+    public static int getYear(int epochDay) {
+        int z = epochDay + DAYS_0000_TO_1970;
+        int era = floorDiv(z, DAYS_PER_ERA);
+        int dayOfEra = z - era * DAYS_PER_ERA;
+        int yearOfEra = getYearOfEra(dayOfEra);
+        // The years start in March here
+        return yearOfEra + era * 400 + (getMonth(epochDay) <= 2 ? 1 : 0);
+    }
+
+    /**
+     * @return the epoch day of the first day of the month of the day
+     */
+    public static int getMonthStart(int epochDay) {
+        return epochDay - getDayOfMonth(epochDay) + 1;
+    }
+
+    /*
+        The day in the year starting on March 1st, so that February, and its leap day, comes
+        last: from 0 to 365.
+     */
+    private static int getDayOfMarchYear(int epochDay) {
+        int z = epochDay + DAYS_0000_TO_1970;
+        int dayOfEra = z - floorDiv(z, DAYS_PER_ERA) * DAYS_PER_ERA;
+        int yearOfEra = getYearOfEra(dayOfEra);
+        return dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    }
+
+    private static int getYearOfEra(int dayOfEra) {
+        return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static int floorDiv(int x, int y) {
+        return (int) floorDiv((long) x, (long) y);
+    }
+
+    private static int floorMod(int x, int y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
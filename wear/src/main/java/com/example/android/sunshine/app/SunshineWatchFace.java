@@ -58,8 +58,8 @@ import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -117,6 +117,10 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         boolean mRegisteredTimeZoneReceiver = false;
         boolean mAmbient;
         Calendar mCalendar;
+        // The date drawn, which only changes with the day or the locale
+        String mDateString;
+        int mDateDay;
+        Locale mDateLocale;
 
         Paint mBackgroundPaint;
         Paint timePaint;
@@ -287,6 +291,30 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /*
+            The date, e.g. "Wed, Jun 24 2015", formatted again only when the day or the locale
+            changes rather than on every frame.
+         */
+        private String getDateString(long now) {
+            TimeZone zone = mCalendar.getTimeZone();
+            int day = EpochDays.fromMillis(now, zone);
+            Locale locale = Locale.getDefault();
+            if (mDateString == null || day != mDateDay || !locale.equals(mDateLocale)) {
+                SimpleDateFormat format = new SimpleDateFormat("EE, MMM", locale);
+                format.setTimeZone(zone);
+                mDateString = new StringBuilder()
+                        .append(format.format(now))
+                        .append(" ")
+                        .append(EpochDays.getDayOfMonth(day))
+                        .append(" ")
+                        .append(EpochDays.getYear(day))
+                        .toString();
+                mDateDay = day;
+                mDateLocale = locale;
+            }
+            return mDateString;
+        }
+
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
             // Draw the background.
@@ -305,22 +333,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     mCalendar.get(Calendar.MINUTE)
             );
 
-            // Get current date
-            Date date = mCalendar.getTime();
-            String weekDay = new SimpleDateFormat("EE").format(date);
-            String month = new SimpleDateFormat("MMM").format(date);
-            int dayOfMonth = mCalendar.get(Calendar.DAY_OF_MONTH);
-            int year = mCalendar.get(Calendar.YEAR);
-
-            StringBuilder sb = new StringBuilder()
-                    .append(weekDay)
-                    .append(", ")
-                    .append(month)
-                    .append(" ")
-                    .append(dayOfMonth)
-                    .append(" ")
-                    .append(year);
-            String dateString = sb.toString();
+            String dateString = getDateString(now);
 
             float xOffset = canvas.getWidth() / 2f;
 